@@ -0,0 +1,87 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.github.gaming32.stdpy.BlockDeque;
+
+/**
+ * {@code BlockDeque} with different block lengths: FIFO churn at the ends,
+ * random {@code get(int)}, full iteration, and building a deque a few blocks
+ * long. A deque only takes full-length blocks once it outgrows its small
+ * first block, so the last one adds enough items for that at every length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BlockLengthBenchmark {
+    private static final int INDICES = 4096;
+    private static final int BUILD = 600;
+
+    @Param({"16", "32", "64", "128", "256"})
+    public int blockLength;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private BlockDeque<Integer> deque;
+    private int[] indices;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        deque = new BlockDeque<>(blockLength, null);
+        for (int i = 0; i < size; i++) {
+            deque.addLast(Values.get(i));
+        }
+        indices = new int[INDICES];
+        for (int i = 0; i < INDICES; i++) {
+            indices[i] = random.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    public Integer churn() {
+        deque.addLast(Values.get(counter++));
+        return deque.removeFirst();
+    }
+
+    @Benchmark
+    public Integer get() {
+        return deque.get(indices[counter++ & (INDICES - 1)]);
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        for (Integer item : deque) {
+            bh.consume(item);
+        }
+    }
+
+    @Benchmark
+    public BlockDeque<Integer> build() {
+        BlockDeque<Integer> built = new BlockDeque<>(blockLength, null);
+        for (int i = 0; i < BUILD; i++) {
+            built.addLast(Values.get(i));
+        }
+        return built;
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code addLast}/{@code addFirst}/{@code removeFirst}/{@code removeLast} at a
+ * steady-state size, plus filling and draining a fresh collection. The
+ * {@link List}-only {@code ArrayList} uses {@code add(0, e)} and
+ * {@code remove(0)} for the left end.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class EndsBenchmark {
+    @Param({"BlockDeque", "ArrayDeque", "LinkedList", "ArrayList"})
+    public Impl impl;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    private Deque<Integer> deque;
+    private List<Integer> list;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Collection<Integer> c = impl.create(size);
+        deque = c instanceof Deque ? (Deque<Integer>)c : null;
+        list = deque == null ? (List<Integer>)c : null;
+    }
+
+    @Benchmark
+    public Integer addLastRemoveFirst() {
+        Integer item = Values.get(counter++);
+        if (deque != null) {
+            deque.addLast(item);
+            return deque.removeFirst();
+        }
+        list.add(item);
+        return list.remove(0);
+    }
+
+    @Benchmark
+    public Integer addFirstRemoveLast() {
+        Integer item = Values.get(counter++);
+        if (deque != null) {
+            deque.addFirst(item);
+            return deque.removeLast();
+        }
+        list.add(0, item);
+        return list.remove(list.size() - 1);
+    }
+
+    @Benchmark
+    public Integer addLastRemoveLast() {
+        Integer item = Values.get(counter++);
+        if (deque != null) {
+            deque.addLast(item);
+            return deque.removeLast();
+        }
+        list.add(item);
+        return list.remove(list.size() - 1);
+    }
+
+    @Benchmark
+    public Integer addFirstRemoveFirst() {
+        Integer item = Values.get(counter++);
+        if (deque != null) {
+            deque.addFirst(item);
+            return deque.removeFirst();
+        }
+        list.add(0, item);
+        return list.remove(0);
+    }
+
+    @Benchmark
+    public Collection<Integer> fillAndDrain() {
+        Collection<Integer> c = impl.create();
+        int n = size;
+        for (int i = 0; i < n; i++) {
+            c.add(Values.get(i));
+        }
+        if (c instanceof Deque) {
+            Deque<Integer> d = (Deque<Integer>)c;
+            while (!d.isEmpty()) {
+                d.removeFirst();
+            }
+        } else {
+            List<Integer> l = (List<Integer>)c;
+            while (!l.isEmpty()) {
+                l.remove(l.size() - 1);
+            }
+        }
+        return c;
+    }
+}
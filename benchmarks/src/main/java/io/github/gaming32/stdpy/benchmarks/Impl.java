@@ -0,0 +1,50 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+
+import io.github.gaming32.stdpy.BlockDeque;
+
+/**
+ * The collections being compared. Benchmarks take this as a {@code @Param} so
+ * that every run measures exactly one implementation, keeping call sites
+ * monomorphic.
+ */
+public enum Impl {
+    BlockDeque {
+        @Override
+        public Collection<Integer> create() {
+            return new BlockDeque<>();
+        }
+    },
+    ArrayDeque {
+        @Override
+        public Collection<Integer> create() {
+            return new ArrayDeque<>();
+        }
+    },
+    LinkedList {
+        @Override
+        public Collection<Integer> create() {
+            return new LinkedList<>();
+        }
+    },
+    ArrayList {
+        @Override
+        public Collection<Integer> create() {
+            return new ArrayList<>();
+        }
+    };
+
+    public abstract Collection<Integer> create();
+
+    public Collection<Integer> create(int size) {
+        Collection<Integer> c = create();
+        for (int i = 0; i < size; i++) {
+            c.add(Values.get(i));
+        }
+        return c;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full traversals through {@code iterator()} and {@code forEach}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class IterationBenchmark {
+    @Param({"BlockDeque", "ArrayDeque", "LinkedList", "ArrayList"})
+    public Impl impl;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    private Collection<Integer> collection;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        collection = impl.create(size);
+    }
+
+    @Benchmark
+    public long iterator() {
+        long sum = 0;
+        for (Integer item : collection) {
+            sum += item;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long forEach() {
+        long[] sum = new long[1];
+        collection.forEach(item -> sum[0] += item);
+        return sum[0];
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code get(int)} and {@code set(int, E)} at uniformly random indices.
+ * {@code ArrayDeque} has no indexed access and is left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class RandomAccessBenchmark {
+    private static final int INDICES = 4096;
+
+    @Param({"BlockDeque", "LinkedList", "ArrayList"})
+    public Impl impl;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    private List<Integer> list;
+    private int[] indices;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        list = (List<Integer>)impl.create(size);
+        indices = new int[INDICES];
+        for (int i = 0; i < INDICES; i++) {
+            indices[i] = random.nextInt(size);
+        }
+    }
+
+    @Benchmark
+    public Integer get() {
+        return list.get(indices[counter++ & (INDICES - 1)]);
+    }
+
+    @Benchmark
+    public Integer set() {
+        int i = counter++;
+        return list.set(indices[i & (INDICES - 1)], Values.get(i));
+    }
+}
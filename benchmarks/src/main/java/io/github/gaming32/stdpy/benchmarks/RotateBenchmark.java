@@ -0,0 +1,81 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.gaming32.stdpy.BlockDeque;
+
+/**
+ * Rotating right by {@code distance} and back again. {@code BlockDeque} uses
+ * its native {@code rotate}, {@code ArrayDeque} moves elements one at a time
+ * between the ends, and the lists use {@link Collections#rotate}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class RotateBenchmark {
+    @Param({"BlockDeque", "ArrayDeque", "LinkedList", "ArrayList"})
+    public Impl impl;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    @Param({"1", "1000"})
+    public int distance;
+
+    private Collection<Integer> collection;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        collection = impl.create(size);
+    }
+
+    @Benchmark
+    public Collection<Integer> rotate() {
+        rotate(collection, distance);
+        rotate(collection, -distance);
+        return collection;
+    }
+
+    private static void rotate(Collection<Integer> c, int n) {
+        if (c instanceof BlockDeque) {
+            ((BlockDeque<Integer>)c).rotate(n);
+        } else if (c instanceof List) {
+            Collections.rotate((List<Integer>)c, n);
+        } else {
+            Deque<Integer> d = (Deque<Integer>)c;
+            int len = d.size();
+            if (len <= 1) {
+                return;
+            }
+            n %= len;
+            while (n > 0) {
+                d.addFirst(d.removeLast());
+                n--;
+            }
+            while (n < 0) {
+                d.addLast(d.removeFirst());
+                n++;
+            }
+        }
+    }
+}
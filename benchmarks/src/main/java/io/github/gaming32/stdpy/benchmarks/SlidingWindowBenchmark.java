@@ -0,0 +1,74 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.gaming32.stdpy.BlockDeque;
+
+/**
+ * Appending to a full window of {@code size} elements. {@code BlockDeque}
+ * evicts through its {@code maxlen}; the other collections evict by hand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class SlidingWindowBenchmark {
+    @Param({"BlockDeque", "ArrayDeque", "LinkedList", "ArrayList"})
+    public Impl impl;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int size;
+
+    private Deque<Integer> deque;
+    private List<Integer> list;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Collection<Integer> c = impl.create(size);
+        if (c instanceof BlockDeque) {
+            c = new BlockDeque<>(c, size);
+        }
+        deque = c instanceof Deque ? (Deque<Integer>)c : null;
+        list = deque == null ? (List<Integer>)c : null;
+    }
+
+    @Benchmark
+    public Object slide() {
+        Integer item = Values.get(counter++);
+        if (deque instanceof BlockDeque) {
+            deque.addLast(item);
+            return deque;
+        }
+        if (deque != null) {
+            deque.addLast(item);
+            if (deque.size() > size) {
+                deque.removeFirst();
+            }
+            return deque;
+        }
+        list.add(item);
+        if (list.size() > size) {
+            list.remove(0);
+        }
+        return list;
+    }
+}
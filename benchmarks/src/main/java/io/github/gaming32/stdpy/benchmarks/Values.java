@@ -0,0 +1,24 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+/**
+ * Pre-boxed element values, so that benchmarks measure the collections rather
+ * than {@link Integer#valueOf(int)}.
+ */
+public final class Values {
+    private static final int COUNT = 1024;
+    private static final int MASK = COUNT - 1;
+    private static final Integer[] VALUES = new Integer[COUNT];
+
+    static {
+        for (int i = 0; i < COUNT; i++) {
+            VALUES[i] = Integer.valueOf(i);
+        }
+    }
+
+    private Values() {
+    }
+
+    public static Integer get(int i) {
+        return VALUES[i & MASK];
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.gaming32.stdpy.benchmarks;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.gaming32.stdpy.WorkStealingBlockDeque;
+
+/**
+ * The same tree of tiny tasks, each forking off half of its range until the
+ * ranges are one item long, run on a {@link ForkJoinPool} and on a minimal
+ * scheduler with one {@link WorkStealingBlockDeque} per worker. Neither
+ * joins: the pool's tasks are {@link CountedCompleter}s, and the scheduler's
+ * workers share one pending-task counter that the caller waits on, so almost
+ * all of the time goes to the work queues. The scheduler's workers spin
+ * (yielding) while idle instead of parking.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class WorkStealingBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"1024", "65536", "1048576"})
+    public int leaves;
+
+    private final LongAdder sum = new LongAdder();
+    private ForkJoinPool pool;
+    private Scheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pool = new ForkJoinPool(threads);
+        scheduler = new Scheduler(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public long forkJoinPool() {
+        sum.reset();
+        pool.invoke(new SplitCompleter(null, 0, leaves));
+        return sum.sum();
+    }
+
+    @Benchmark
+    public long workStealingBlockDeque() {
+        sum.reset();
+        scheduler.run(new SplitTask(0, leaves));
+        return sum.sum();
+    }
+
+    private final class SplitCompleter extends CountedCompleter<Void> {
+        private final int lo;
+        private int hi;
+
+        SplitCompleter(CountedCompleter<?> parent, int lo, int hi) {
+            super(parent);
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        public void compute() {
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                addToPendingCount(1);
+                new SplitCompleter(this, mid, hi).fork();
+                hi = mid;
+            }
+            sum.add(lo);
+            tryComplete();
+        }
+    }
+
+    private final class SplitTask {
+        private final int lo;
+        private int hi;
+
+        SplitTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        void run(Scheduler.Worker worker) {
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                worker.fork(new SplitTask(mid, hi));
+                hi = mid;
+            }
+            sum.add(lo);
+        }
+    }
+
+    private static final class Scheduler {
+        final Worker[] workers;
+        final AtomicLong pending = new AtomicLong();
+        volatile SplitTask injected;
+        volatile boolean shutdown;
+
+        Scheduler(int threads) {
+            workers = new Worker[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Worker(i);
+                workers[i].setDaemon(true);
+            }
+            for (Worker worker : workers) {
+                worker.start();
+            }
+        }
+
+        void run(SplitTask root) {
+            pending.set(1);
+            injected = root;
+            while (pending.get() != 0) {
+                Thread.yield();
+            }
+        }
+
+        void shutdown() throws InterruptedException {
+            shutdown = true;
+            for (Worker worker : workers) {
+                worker.join();
+            }
+        }
+
+        final class Worker extends Thread {
+            final WorkStealingBlockDeque<SplitTask> deque = new WorkStealingBlockDeque<>();
+            final int index;
+
+            Worker(int index) {
+                this.index = index;
+            }
+
+            void fork(SplitTask task) {
+                pending.incrementAndGet();
+                deque.push(task);
+            }
+
+            SplitTask steal() {
+                int n = workers.length;
+                int start = ThreadLocalRandom.current().nextInt(n);
+                for (int i = 0; i < n; i++) {
+                    Worker victim = workers[(start + i) % n];
+                    if (victim != this) {
+                        SplitTask task = victim.deque.steal();
+                        if (task != null) {
+                            return task;
+                        }
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void run() {
+                while (!shutdown) {
+                    SplitTask task = deque.pop();
+                    if (task == null) {
+                        task = steal();
+                    }
+                    if (task == null && index == 0 && injected != null) {
+                        task = injected;
+                        injected = null;
+                    }
+                    if (task == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    task.run(this);
+                    pending.decrementAndGet();
+                }
+            }
+        }
+    }
+}
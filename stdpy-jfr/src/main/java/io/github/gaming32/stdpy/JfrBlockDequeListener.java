@@ -0,0 +1,142 @@
+package io.github.gaming32.stdpy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/* BlockDequeMetrics that also reports to Java Flight Recorder: an event for
+   each rotation, eviction and fail-fast error, and a periodic statistics
+   event with the counters. Block churn is too frequent for an event per
+   block, so it only shows up in the statistics. The events cost nothing
+   beyond the counters while they aren't being recorded.
+
+   It lives in the separate stdpy-jfr artifact, which needs Java 11, so that
+   stdpy itself still builds and runs on any Java 8. Close the listener to
+   unregister its statistics event. */
+public class JfrBlockDequeListener extends BlockDequeMetrics implements AutoCloseable {
+    protected final Runnable hook = this::emitStatistics;
+
+    public JfrBlockDequeListener() {
+        FlightRecorder.addPeriodicEvent(StatisticsEvent.class, this.hook);
+    }
+
+    @Override
+    public void rotated(BlockDeque<?> deque, int moved) {
+        super.rotated(deque, moved);
+        RotateEvent event = new RotateEvent();
+        if (event.shouldCommit()) {
+            event.moved = moved;
+            event.size = deque.size();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void evicted(BlockDeque<?> deque, int count) {
+        super.evicted(deque, count);
+        EvictionEvent event = new EvictionEvent();
+        if (event.shouldCommit()) {
+            event.count = count;
+            event.maxlen = deque.getMaxlen();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void mutationDetected(BlockDeque<?> deque) {
+        super.mutationDetected(deque);
+        MutationEvent event = new MutationEvent();
+        if (event.shouldCommit()) {
+            event.size = deque.size();
+            event.commit();
+        }
+    }
+
+    protected void emitStatistics() {
+        StatisticsEvent event = new StatisticsEvent();
+        event.blocksAllocated = getBlocksAllocated();
+        event.blocksReused = getBlocksReused();
+        event.blocksCached = getBlocksCached();
+        event.blocksDropped = getBlocksDropped();
+        event.rotations = getRotations();
+        event.itemsRotated = getItemsRotated();
+        event.evictions = getEvictions();
+        event.mutationErrors = getMutationErrors();
+        event.commit();
+    }
+
+    @Override
+    public void close() {
+        FlightRecorder.removePeriodicEvent(this.hook);
+    }
+
+    @Name("io.github.gaming32.stdpy.BlockDequeRotate")
+    @Label("BlockDeque Rotate")
+    @Category({"stdpy", "BlockDeque"})
+    @StackTrace(false)
+    public static class RotateEvent extends Event {
+        @Label("Items Moved")
+        int moved;
+
+        @Label("Deque Size")
+        int size;
+    }
+
+    @Name("io.github.gaming32.stdpy.BlockDequeEviction")
+    @Label("BlockDeque Eviction")
+    @Description("Items dropped to stay within maxlen")
+    @Category({"stdpy", "BlockDeque"})
+    @StackTrace(false)
+    public static class EvictionEvent extends Event {
+        @Label("Items Evicted")
+        int count;
+
+        @Label("Maximum Length")
+        int maxlen;
+    }
+
+    @Name("io.github.gaming32.stdpy.BlockDequeMutation")
+    @Label("BlockDeque Mutated During Iteration")
+    @Category({"stdpy", "BlockDeque"})
+    public static class MutationEvent extends Event {
+        @Label("Deque Size")
+        int size;
+    }
+
+    @Name("io.github.gaming32.stdpy.BlockDequeStatistics")
+    @Label("BlockDeque Statistics")
+    @Description("Running totals of a JfrBlockDequeListener")
+    @Category({"stdpy", "BlockDeque"})
+    @Period("1 s")
+    @StackTrace(false)
+    public static class StatisticsEvent extends Event {
+        @Label("Blocks Allocated")
+        long blocksAllocated;
+
+        @Label("Blocks Reused")
+        long blocksReused;
+
+        @Label("Blocks Cached")
+        long blocksCached;
+
+        @Label("Blocks Dropped")
+        long blocksDropped;
+
+        @Label("Rotations")
+        long rotations;
+
+        @Label("Items Rotated")
+        long itemsRotated;
+
+        @Label("Evictions")
+        long evictions;
+
+        @Label("Mutation Errors")
+        long mutationErrors;
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrBlockDequeListenerTest {
+    @Test
+    public void testEvents() throws IOException {
+        List<RecordedEvent> events;
+        Path file = Files.createTempFile("stdpy-jfr", ".jfr");
+        try (
+            Recording recording = new Recording();
+            JfrBlockDequeListener listener = new JfrBlockDequeListener()
+        ) {
+            recording.enable(JfrBlockDequeListener.RotateEvent.class);
+            recording.enable(JfrBlockDequeListener.EvictionEvent.class);
+            recording.enable(JfrBlockDequeListener.MutationEvent.class);
+            recording.enable(JfrBlockDequeListener.StatisticsEvent.class);
+            recording.start();
+
+            BlockDeque<Integer> deque = new BlockDeque<>(null, 10);
+            deque.setListener(listener);
+            for (int i = 0; i < 15; i++) {
+                deque.addLast(i);
+            }
+            deque.rotate(3);
+            Iterator<Integer> it = deque.iterator();
+            it.next();
+            deque.addLast(0);
+            try {
+                it.next();
+            } catch (IllegalStateException e) {
+            }
+            /* The counters still work as in BlockDequeMetrics */
+            assertEquals(listener.getEvictions(), 6);
+            assertEquals(listener.getRotations(), 1);
+            assertEquals(listener.getMutationErrors(), 1);
+            listener.emitStatistics();
+
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        boolean statistics = false;
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            counts.merge(name, 1, Integer::sum);
+            if (name.equals("io.github.gaming32.stdpy.BlockDequeRotate")) {
+                /* Ten items fit in a small block, which rotates in place */
+                assertEquals(event.getInt("moved"), 10);
+                assertEquals(event.getInt("size"), 10);
+            } else if (name.equals("io.github.gaming32.stdpy.BlockDequeEviction")) {
+                assertEquals(event.getInt("count"), 1);
+                assertEquals(event.getInt("maxlen"), 10);
+            } else if (name.equals("io.github.gaming32.stdpy.BlockDequeStatistics")) {
+                /* The periodic event may also have fired on its own, earlier */
+                statistics |= event.getLong("evictions") == 6
+                    && event.getLong("rotations") == 1
+                    && event.getLong("mutationErrors") == 1;
+            }
+        }
+        assertEquals(counts.get("io.github.gaming32.stdpy.BlockDequeRotate"), Integer.valueOf(1));
+        assertEquals(counts.get("io.github.gaming32.stdpy.BlockDequeEviction"), Integer.valueOf(6));
+        assertEquals(counts.get("io.github.gaming32.stdpy.BlockDequeMutation"), Integer.valueOf(1));
+        assertEquals(statistics, true);
+    }
+}
@@ -1,71 +1,479 @@
 package io.github.gaming32.stdpy;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
 import java.util.AbstractList;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /* collections module implementation of a deque() datatype
    Written and maintained by Raymond D. Hettinger <python@rcn.com>
    Java version by Josiah (Gaming32) Glosson <gaming32i64@gmail.com>
 */
 @SuppressWarnings("unchecked")
-public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
+public class BlockDeque<E> extends AbstractList<E> implements Deque<E>, Cloneable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /* The default block length, the same as CPython's. See "Block length"
+       in the README for the trade-offs. */
     protected static final int BLOCKLEN = 64;
-    protected static final int CENTER = ((BLOCKLEN - 1) / 2);
+    protected static final int MINBLOCKLEN = 4;
+    protected static final int MAXBLOCKLEN = 1 << 30;
+    /* The length of the first small block; see growSmall() */
+    protected static final int SMALLBLOCKLEN = 2;
     protected static final int MAXFREEBLOCKS = 16;
+    protected static final int MINBLOCKINDEX = 8;
 
     protected static class Block {
         protected Block leftlink;
-        protected Object[] data = new Object[BLOCKLEN];
+        protected Object[] data;
         protected Block rightlink;
+        /* The deque's epoch when the block was made; see snapshot() */
+        protected int epoch;
+
+        protected Block(int blocklen) {
+            this.data = new Object[blocklen];
+        }
     }
 
-    protected Block leftblock;
-    protected Block rightblock;
-    protected int leftindex;
-    protected int rightindex;
-    protected long state;
+    /* Shared by every empty deque that has never needed storage. It holds no
+       items, so both ends are already "full" and the first append replaces
+       it with a small block of its own. */
+    protected static final Block EMPTYBLOCK = new Block(0);
+
+    /* A power of two, so offsets split into a block number and an index
+       within the block with a shift and a mask. */
+    protected final int blocklen;
+    protected final int blockshift;
+    protected final int blockmask;
+
+    /* Until a deque needs a whole block it keeps its items in a single small
+       block, whose data array is shorter than blocklen and doubles as it
+       fills up. Only full-length blocks are ever linked, freed or pooled. */
+    protected transient Block leftblock;
+    protected transient Block rightblock;
+    protected transient int leftindex;
+    protected transient int rightindex;
+    protected transient long state;
     protected int maxlen;
-    protected int numfreeblocks;
-    protected Block[] freeblocks = new Block[MAXFREEBLOCKS];
-
-    protected int size;
+    protected transient int numfreeblocks;
+    protected transient Block[] freeblocks;
+    /* When set, blocks come from and go back to this pool instead of the
+       freeblocks array, which is then never allocated. */
+    protected final transient BlockPool pool;
+
+    /* The blocks from leftblock to rightblock, in order, stored in a circular
+       array whose length is a power of two. This lets get() and set() find
+       the block holding any index without walking the links. It is only
+       allocated once there are two blocks. */
+    protected transient Block[] blockindex;
+    protected transient int blockindexhead;
+    protected transient int numblocks;
+
+    protected transient int size;
+
+    /* Automatic trimming (see setTrimPeriod()). Every trimperiod calls to
+       newblock() and freeblock(), the free blocks that were never needed
+       during that period (the lowest numfreeblocks got) are dropped, and an
+       oversized block index is shrunk. */
+    protected int trimperiod;
+    protected transient int trimcountdown;
+    protected transient int freelowwater;
+
+    /* Copy-on-write sharing with snapshots (see snapshot()). Taking a
+       snapshot bumps epoch, so every block made before then counts as
+       shared: the deque never writes into one again, but copies it first
+       with unshare(). Removing items from a shared block leaves their slots
+       alone instead of nulling them. shared says whether any shared block
+       may still be linked in, and indexshared whether the block index array
+       belongs to a snapshot too. */
+    protected transient int epoch;
+    protected transient boolean shared;
+    protected transient boolean indexshared;
+
+    /* Told about block churn, rotations, evictions and fail-fast errors when
+       set; see BlockDequeListener */
+    protected transient BlockDequeListener listener;
 
     protected Block newblock() {
-        Block b;
+        Block b = null;
+        if (this.trimperiod > 0 && --this.trimcountdown <= 0) {
+            autoTrim();
+        }
         if (this.numfreeblocks > 0) {
             this.numfreeblocks--;
-            return this.freeblocks[this.numfreeblocks];
+            if (this.numfreeblocks < this.freelowwater) {
+                this.freelowwater = this.numfreeblocks;
+            }
+            b = this.freeblocks[this.numfreeblocks];
+            this.freeblocks[this.numfreeblocks] = null;
+        } else if (this.pool != null) {
+            b = this.pool.acquire();
         }
-        b = new Block();
+        if (this.listener != null) {
+            this.listener.blockAcquired(this, b != null);
+        }
+        if (b == null) {
+            b = new Block(this.blocklen);
+        }
+        b.epoch = this.epoch;
         return b;
     }
 
     protected void freeblock(Block b) {
-        if (this.numfreeblocks < MAXFREEBLOCKS) {
-            this.freeblocks[this.numfreeblocks] = b;
-            this.numfreeblocks++;
+        boolean cached = false;
+
+        if (b.data.length != this.blocklen) {
+            return;
+        }
+        /* A block shared with a snapshot is left to the garbage collector */
+        if (b.epoch == this.epoch) {
+            if (this.trimperiod > 0 && --this.trimcountdown <= 0) {
+                autoTrim();
+            }
+            if (this.pool != null) {
+                cached = this.pool.release(b);
+            } else if (this.numfreeblocks < MAXFREEBLOCKS) {
+                if (this.freeblocks == null) {
+                    this.freeblocks = new Block[MAXFREEBLOCKS];
+                }
+                this.freeblocks[this.numfreeblocks] = b;
+                this.numfreeblocks++;
+                cached = true;
+            }
+        }
+        if (this.listener != null) {
+            this.listener.blockReleased(this, cached);
+        }
+    }
+
+    protected void autoTrim() {
+        int n = this.freelowwater;
+
+        while (n-- > 0) {
+            this.numfreeblocks--;
+            this.freeblocks[this.numfreeblocks] = null;
+        }
+        if (this.blockindex != null && this.blockindex.length > MINBLOCKINDEX &&
+            this.numblocks <= this.blockindex.length >> 2) {
+            resizeBlockIndex(this.blockindex.length >> 1);
+        }
+        this.freelowwater = this.numfreeblocks;
+        this.trimcountdown = this.trimperiod;
+    }
+
+    /**
+     * Releases memory the deque is holding on to without needing it: its
+     * cached free blocks, any unused part of its block index, and, if the
+     * deque is empty or fits in less than one block, its block.
+     */
+    public void trimToSize() {
+        Block b = this.leftblock, small;
+        int n = this.size, length, i;
+        boolean cached;
+
+        if (b == this.rightblock && b != EMPTYBLOCK) {
+            length = SMALLBLOCKLEN;
+            while (length < n) {
+                length <<= 1;
+            }
+            if (n == 0 || length < b.data.length) {
+                if (n == 0) {
+                    small = EMPTYBLOCK;
+                } else {
+                    small = new Block(length);
+                    small.epoch = this.epoch;
+                    System.arraycopy(b.data, this.leftindex, small.data, (length - n) >> 1, n);
+                    if (b.epoch == this.epoch) {
+                        Arrays.fill(b.data, this.leftindex, this.rightindex + 1, null);
+                    }
+                }
+                this.leftblock = small;
+                this.rightblock = small;
+                this.rightindex = ((small.data.length + n) >> 1) - 1;
+                this.leftindex = this.rightindex - n + 1;
+                this.state++;
+                if (b.data.length == this.blocklen) {
+                    cached = this.pool != null && b.epoch == this.epoch && this.pool.release(b);
+                    if (this.listener != null) {
+                        this.listener.blockReleased(this, cached);
+                    }
+                }
+                this.shared = false;
+            }
+        }
+        if (this.numblocks == 1) {
+            this.blockindex = null;
+            this.indexshared = false;
+        } else {
+            length = MINBLOCKINDEX;
+            while (length < this.numblocks) {
+                length <<= 1;
+            }
+            if (length < this.blockindex.length) {
+                resizeBlockIndex(length);
+            }
+        }
+        for (i = 0; i < this.numfreeblocks; i++) {
+            this.freeblocks[i] = null;
+        }
+        this.numfreeblocks = 0;
+        this.freeblocks = null;
+        this.freelowwater = 0;
+    }
+
+    /**
+     * Makes the deque trim itself automatically: after every {@code period}
+     * block allocations and releases, cached free blocks that went unused
+     * for the whole period are dropped and the block index is halved if it
+     * is at most a quarter full. A period of 0 (the default) turns this off.
+     */
+    public void setTrimPeriod(int period) {
+        if (period < 0) {
+            throw new IllegalArgumentException("negative trim period " + period);
+        }
+        this.trimperiod = period;
+        this.trimcountdown = period;
+        this.freelowwater = this.numfreeblocks;
+    }
+
+    public int getTrimPeriod() {
+        return this.trimperiod;
+    }
+
+    protected void resizeBlockIndex(int length) {
+        Block[] oldindex = this.blockindex;
+        Block[] newindex = new Block[length];
+        int head = this.blockindexhead;
+        int m = oldindex.length - head;
+
+        assert(this.numblocks <= length);
+        if (m >= this.numblocks) {
+            System.arraycopy(oldindex, head, newindex, 0, this.numblocks);
+        } else {
+            System.arraycopy(oldindex, head, newindex, 0, m);
+            System.arraycopy(oldindex, 0, newindex, m, this.numblocks - m);
+        }
+        this.blockindex = newindex;
+        this.blockindexhead = 0;
+        this.indexshared = false;
+    }
+
+    /* Gives the deque its own copy of a block index shared with a snapshot */
+    protected void unshareIndex() {
+        if (this.indexshared) {
+            this.blockindex = this.blockindex.clone();
+            this.indexshared = false;
+        }
+    }
+
+    protected void growBlockIndex() {
+        resizeBlockIndex(this.blockindex.length << 1);
+    }
+
+    protected void indexPushLeft(Block b) {
+        if (this.blockindex == null) {
+            this.blockindex = new Block[MINBLOCKINDEX];
+            this.blockindex[0] = b.rightlink;
+            this.blockindexhead = 0;
+        }
+        if (this.numblocks == this.blockindex.length) {
+            growBlockIndex();
+        }
+        unshareIndex();
+        this.blockindexhead = (this.blockindexhead - 1) & (this.blockindex.length - 1);
+        this.blockindex[this.blockindexhead] = b;
+        this.numblocks++;
+    }
+
+    protected void indexPushRight(Block b) {
+        if (this.blockindex == null) {
+            this.blockindex = new Block[MINBLOCKINDEX];
+            this.blockindex[0] = b.leftlink;
+            this.blockindexhead = 0;
+        }
+        if (this.numblocks == this.blockindex.length) {
+            growBlockIndex();
+        }
+        unshareIndex();
+        this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = b;
+        this.numblocks++;
+    }
+
+    protected void indexPopLeft() {
+        assert(this.numblocks > 1);
+        unshareIndex();
+        this.blockindex[this.blockindexhead] = null;
+        this.blockindexhead = (this.blockindexhead + 1) & (this.blockindex.length - 1);
+        this.numblocks--;
+    }
+
+    protected void indexPopRight() {
+        assert(this.numblocks > 1);
+        unshareIndex();
+        this.numblocks--;
+        this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = null;
+    }
+
+    protected void indexReset(Block b) {
+        if (this.blockindex == null) {
+            this.numblocks = 1;
+            return;
+        }
+        if (this.indexshared) {
+            /* Every slot is about to be cleared anyway */
+            this.blockindex = new Block[this.blockindex.length];
+            this.indexshared = false;
+            this.numblocks = 0;
+        }
+        int mask = this.blockindex.length - 1;
+        while (this.numblocks > 0) {
+            this.numblocks--;
+            this.blockindex[(this.blockindexhead + this.numblocks) & mask] = null;
         }
+        this.blockindexhead = 0;
+        this.blockindex[0] = b;
+        this.numblocks = 1;
+    }
+
+    protected static void checkBlockLength(int blocklen) {
+        if (blocklen < MINBLOCKLEN || blocklen > MAXBLOCKLEN || (blocklen & (blocklen - 1)) != 0) {
+            throw new IllegalArgumentException("block length must be a power of two between " +
+                MINBLOCKLEN + " and " + MAXBLOCKLEN + ": " + blocklen);
+        }
+    }
+
+    /* Returns the block holding the item at offset i from the start of
+       leftblock, i.e. the item at deque index i - leftindex. */
+    protected Block blockAt(int i) {
+        if (this.blockindex == null) {
+            return this.leftblock;
+        }
+        return this.blockindex[(this.blockindexhead + (i >> this.blockshift)) & (this.blockindex.length - 1)];
     }
 
     public BlockDeque() {
+        this((BlockPool)null);
+    }
+
+    public BlockDeque(BlockPool pool) {
+        this(pool == null ? BLOCKLEN : pool.getBlockLength(), pool);
+    }
+
+    /* blocklen must be a power of two of at least MINBLOCKLEN, and match the
+       pool's block length if a pool is given. */
+    public BlockDeque(int blocklen, BlockPool pool) {
         Block b;
 
-        b = newblock();
-        
+        checkBlockLength(blocklen);
+        if (pool != null && pool.getBlockLength() != blocklen) {
+            throw new IllegalArgumentException(
+                "pool holds blocks of length " + pool.getBlockLength() + ", not " + blocklen
+            );
+        }
+        this.blocklen = blocklen;
+        this.blockshift = Integer.numberOfTrailingZeros(blocklen);
+        this.blockmask = blocklen - 1;
+        this.pool = pool;
+
         this.size = 0;
-        this.leftblock = b;
-        this.rightblock = b;
-        this.leftindex = CENTER + 1;
-        this.rightindex = CENTER;
+        this.leftblock = EMPTYBLOCK;
+        this.rightblock = EMPTYBLOCK;
+        this.leftindex = 0;
+        this.rightindex = -1;
         this.state = 0;
         this.maxlen = Integer.MAX_VALUE;
         this.numfreeblocks = 0;
+        this.numblocks = 1;
+    }
+
+    /* Centers the (empty) index range in leftblock */
+    protected void resetIndices() {
+        this.rightindex = (this.leftblock.data.length - 1) >> 1;
+        this.leftindex = this.rightindex + 1;
+    }
+
+    /* Moves the items of the single small block to offset in a data array of
+       the given length, reusing the current one if the length is the same. */
+    protected void resizeSmall(int length, int offset) {
+        Block b = this.leftblock;
+        Object[] olddata = b.data, data;
+        int n = this.size, index = this.leftindex;
+
+        assert(b == this.rightblock && length < this.blocklen && n <= length);
+        if (b == EMPTYBLOCK) {
+            b = new Block(length);
+            b.epoch = this.epoch;
+            this.leftblock = b;
+            this.rightblock = b;
+            indexReset(b);
+            data = b.data;
+        } else if (length == olddata.length && b.epoch == this.epoch) {
+            data = olddata;
+        } else {
+            data = new Object[length];
+        }
+        System.arraycopy(olddata, index, data, offset, n);
+        if (data != olddata) {
+            /* A snapshot of a single block holds on to its data array, not
+               to the block, so replacing the array unshares it */
+            b.data = data;
+            b.epoch = this.epoch;
+        } else if (offset > index) {
+            Arrays.fill(data, index, Math.min(offset, index + n), null);
+        } else if (offset < index) {
+            Arrays.fill(data, Math.max(offset + n, index), index + n, null);
+        }
+        this.leftindex = offset;
+        this.rightindex = offset + n - 1;
+    }
+
+    /* Called when an end of the single small block is reached. Recenters the
+       items if at most half of the block is used, otherwise doubles the
+       block, switching to a full-length block once that would be reached. */
+    protected void growSmall() {
+        int length = this.leftblock.data.length;
+        int n = this.size;
+
+        if (length - n < 2 || n > length >> 1) {
+            length = length == 0 ? SMALLBLOCKLEN : length << 1;
+            if (length >= this.blocklen) {
+                inflate();
+                return;
+            }
+        }
+        resizeSmall(length, (length - n) >> 1);
+    }
+
+    /* Replaces a small block with a full-length one */
+    protected void inflate() {
+        Block small = this.leftblock, b;
+        int n = this.size;
+
+        if (small.data.length == this.blocklen) {
+            return;
+        }
+        b = newblock();
+        System.arraycopy(small.data, this.leftindex, b.data, (this.blocklen - n) >> 1, n);
+        this.leftblock = b;
+        this.rightblock = b;
+        this.leftindex = (this.blocklen - n) >> 1;
+        this.rightindex = this.leftindex + n - 1;
+        indexReset(b);
     }
 
     @Override
@@ -77,7 +485,9 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             throw new NoSuchElementException("pop from an empty deque");
         }
         item = (E)this.rightblock.data[this.rightindex];
-        this.rightblock.data[this.rightindex] = null;
+        if (this.rightblock.epoch == this.epoch) {
+            this.rightblock.data[this.rightindex] = null;
+        }
         this.rightindex--;
         this.size--;
         this.state++;
@@ -87,10 +497,10 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
                 prevblock = this.rightblock.leftlink;
                 freeblock(this.rightblock);
                 this.rightblock = prevblock;
-                this.rightindex = BLOCKLEN - 1;
+                this.rightindex = this.blocklen - 1;
+                indexPopRight();
             } else {
-                this.leftindex = CENTER + 1;
-                this.rightindex = CENTER;
+                resetIndices();
             }
         }
         return item;
@@ -105,42 +515,242 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             throw new NoSuchElementException("pop from an empty deque");
         }
         item = (E)this.leftblock.data[this.leftindex];
-        this.leftblock.data[this.leftindex] = null;
+        if (this.leftblock.epoch == this.epoch) {
+            this.leftblock.data[this.leftindex] = null;
+        }
         this.leftindex++;
         this.size--;
         this.state++;
 
-        if (this.leftindex == BLOCKLEN) {
+        if (this.leftindex == this.blocklen) {
             if (this.size > 0) {
                 prevblock = this.leftblock.rightlink;
-                freeblock(prevblock);
+                freeblock(this.leftblock);
                 this.leftblock = prevblock;
                 this.leftindex = 0;
+                indexPopLeft();
             } else {
-                this.leftindex = CENTER + 1;
-                this.rightindex = CENTER;
+                resetIndices();
             }
         }
         return item;
     }
 
+    /* Removes the n leftmost items, copying them in order into dest starting
+       at destPos unless dest is null. */
+    protected void removeFirstInternal(int n, Object[] dest, int destPos) {
+        Block prevblock;
+        int m;
+
+        assert(0 < n && n <= this.size);
+        this.size -= n;
+        while (n > 0) {
+            m = this.blocklen - this.leftindex;
+            if (m > n) {
+                m = n;
+            }
+            if (dest != null) {
+                System.arraycopy(this.leftblock.data, this.leftindex, dest, destPos, m);
+            }
+            if (this.leftblock.epoch == this.epoch) {
+                Arrays.fill(this.leftblock.data, this.leftindex, this.leftindex + m, null);
+            }
+            this.leftindex += m;
+            destPos += m;
+            n -= m;
+            if (this.leftindex == this.blocklen && (n > 0 || this.size > 0)) {
+                prevblock = this.leftblock.rightlink;
+                freeblock(this.leftblock);
+                this.leftblock = prevblock;
+                this.leftindex = 0;
+                indexPopLeft();
+            }
+        }
+        if (this.size == 0) {
+            resetIndices();
+        }
+        this.state++;
+    }
+
+    /* Removes the n rightmost items, copying them in order into dest starting
+       at destPos unless dest is null. */
+    protected void removeLastInternal(int n, Object[] dest, int destPos) {
+        Block prevblock;
+        int m;
+
+        assert(0 < n && n <= this.size);
+        this.size -= n;
+        while (n > 0) {
+            m = this.rightindex + 1;
+            if (m > n) {
+                m = n;
+            }
+            n -= m;
+            this.rightindex -= m;
+            if (dest != null) {
+                System.arraycopy(this.rightblock.data, this.rightindex + 1, dest, destPos + n, m);
+            }
+            if (this.rightblock.epoch == this.epoch) {
+                Arrays.fill(this.rightblock.data, this.rightindex + 1, this.rightindex + 1 + m, null);
+            }
+            if (this.rightindex < 0 && (n > 0 || this.size > 0)) {
+                prevblock = this.rightblock.leftlink;
+                freeblock(this.rightblock);
+                this.rightblock = prevblock;
+                this.rightindex = this.blocklen - 1;
+                indexPopRight();
+            }
+        }
+        if (this.size == 0) {
+            resetIndices();
+        }
+        this.state++;
+    }
+
+    protected int checkBulkCount(int n, Object[] dest) {
+        if (n < 0) {
+            throw new IllegalArgumentException("negative item count " + n);
+        }
+        if (n > dest.length) {
+            throw new IllegalArgumentException("item count " + n + " is larger than the destination array");
+        }
+        return n < this.size ? n : this.size;
+    }
+
+    /**
+     * Removes up to {@code n} items from the left end and stores them in
+     * {@code dest}, in deque order, starting at index 0.
+     * @return the number of items removed
+     */
+    public int removeFirst(int n, E[] dest) {
+        n = checkBulkCount(n, dest);
+        if (n > 0) {
+            removeFirstInternal(n, dest, 0);
+        }
+        return n;
+    }
+
+    /**
+     * Removes up to {@code n} items from the right end and stores them in
+     * {@code dest}, in deque order (so the former last item is stored
+     * last), starting at index 0.
+     * @return the number of items removed
+     */
+    public int removeLast(int n, E[] dest) {
+        n = checkBulkCount(n, dest);
+        if (n > 0) {
+            removeLastInternal(n, dest, 0);
+        }
+        return n;
+    }
+
+    /**
+     * Copies up to {@code n} items from the left end into {@code dest}, in
+     * deque order, without removing them.
+     * @return the number of items copied
+     */
+    public int peekFirst(int n, E[] dest) {
+        Block b = this.leftblock;
+        int index = this.leftindex;
+        int i, m;
+
+        n = checkBulkCount(n, dest);
+        for (i = 0; i < n; i += m) {
+            m = this.blocklen - index;
+            if (m > n - i) {
+                m = n - i;
+            }
+            System.arraycopy(b.data, index, dest, i, m);
+            b = b.rightlink;
+            index = 0;
+        }
+        return n;
+    }
+
+    /**
+     * Removes up to {@code maxElements} items from the left end and adds
+     * them to {@code c}, in deque order.
+     * @return the number of items moved
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Block b = this.leftblock;
+        int index = this.leftindex;
+        int n = maxElements < this.size ? maxElements : this.size;
+        int i = 0;
+        long startState = this.state;
+
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        if (n <= 0) {
+            return 0;
+        }
+        try {
+            for (; i < n; i++) {
+                c.add((E)b.data[index]);
+                if (startState != this.state) {
+                    throw mutated();
+                }
+                index++;
+                if (index == this.blocklen) {
+                    b = b.rightlink;
+                    index = 0;
+                }
+            }
+        } finally {
+            if (i > 0 && startState == this.state) {
+                removeFirstInternal(i, null, 0);
+            }
+        }
+        return n;
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
     protected boolean needsTrim(int maxlen) {
         return maxlen < this.size;
     }
 
+    /* The fail-fast error for a deque changed under an iteration, search or
+       view, reported to the listener */
+    protected IllegalStateException mutated() {
+        return mutated("deque mutated during iteration");
+    }
+
+    protected IllegalStateException mutated(String message) {
+        if (this.listener != null) {
+            this.listener.mutationDetected(this);
+        }
+        return new IllegalStateException(message);
+    }
+
     protected void appendInternal(E item, int maxlen) {
-        if (this.rightindex == BLOCKLEN - 1) {
-            Block b = newblock();
-            b.leftlink = this.rightblock;
-            this.rightblock.rightlink = b;
-            this.rightblock = b;
-            this.rightindex = -1;
+        if (this.rightindex == this.rightblock.data.length - 1) {
+            if (this.rightblock.data.length < this.blocklen) {
+                growSmall();
+            } else {
+                Block b = newblock();
+                b.leftlink = this.rightblock;
+                this.rightblock.rightlink = b;
+                this.rightblock = b;
+                this.rightindex = -1;
+                indexPushRight(b);
+            }
+        }
+        if (this.rightblock.epoch != this.epoch) {
+            unshare(this.rightblock, this.numblocks - 1);
         }
         this.size++;
         this.rightindex++;
         this.rightblock.data[this.rightindex] = item;
         if (needsTrim(maxlen)) {
             removeFirst();
+            if (this.listener != null) {
+                this.listener.evicted(this, 1);
+            }
         } else {
             this.state++;
         }
@@ -153,17 +763,28 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
 
     protected void appendleftInternal(E item, int maxlen) {
         if (this.leftindex == 0) {
-            Block b = newblock();
-            b.rightlink = this.leftblock;
-            this.leftblock.leftlink = b;
-            this.leftblock = b;
-            this.leftindex  = BLOCKLEN;
+            if (this.leftblock.data.length < this.blocklen) {
+                growSmall();
+            } else {
+                Block b = newblock();
+                b.rightlink = this.leftblock;
+                this.leftblock.leftlink = b;
+                this.leftblock = b;
+                this.leftindex  = this.blocklen;
+                indexPushLeft(b);
+            }
+        }
+        if (this.leftblock.epoch != this.epoch) {
+            unshare(this.leftblock, 0);
         }
         this.size++;
         this.leftindex--;
         this.leftblock.data[this.leftindex] = item;
         if (needsTrim(maxlen)) {
             removeLast();
+            if (this.listener != null) {
+                this.listener.evicted(this, 1);
+            }
         } else {
             this.state++;
         }
@@ -174,85 +795,218 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
         appendleftInternal(e, this.maxlen);
     }
 
-    protected boolean consumeIterator(Iterator<? extends E> it) {
-        while (it.hasNext()) it.next();
-        return false;
+    /* Appends len items from a, starting at off, to the right end without
+       trimming to maxlen. */
+    protected void appendArray(Object[] a, int off, int len) {
+        Block b;
+        int m;
+
+        while (len > 0) {
+            if (this.rightindex == this.blocklen - 1) {
+                b = newblock();
+                b.leftlink = this.rightblock;
+                this.rightblock.rightlink = b;
+                this.rightblock = b;
+                this.rightindex = -1;
+                indexPushRight(b);
+            }
+            if (this.rightblock.epoch != this.epoch) {
+                unshare(this.rightblock, this.numblocks - 1);
+            }
+            m = this.blocklen - 1 - this.rightindex;
+            if (m > len) {
+                m = len;
+            }
+            System.arraycopy(a, off, this.rightblock.data, this.rightindex + 1, m);
+            this.rightindex += m;
+            this.size += m;
+            off += m;
+            len -= m;
+        }
     }
 
-    public boolean addAllLast(Collection<? extends E> c) {
-        Iterator<? extends E> it;
-        E item;
-        int maxlen = this.maxlen;
-
-        if (this == c) {
-            return addAllLast(new ArrayList<>(this));
+    /* Appends len items from a, starting at off, one by one to the left end
+       (so they end up reversed) without trimming to maxlen. */
+    protected void appendleftArray(Object[] a, int off, int len) {
+        Object[] data;
+        Block b;
+        int index, limit;
+
+        while (len > 0) {
+            if (this.leftindex == 0) {
+                b = newblock();
+                b.rightlink = this.leftblock;
+                this.leftblock.leftlink = b;
+                this.leftblock = b;
+                this.leftindex = this.blocklen;
+                indexPushLeft(b);
+            }
+            if (this.leftblock.epoch != this.epoch) {
+                unshare(this.leftblock, 0);
+            }
+            data = this.leftblock.data;
+            index = this.leftindex;
+            limit = index > len ? index - len : 0;
+            this.size += index - limit;
+            len -= index - limit;
+            while (index > limit) {
+                data[--index] = a[off++];
+            }
+            this.leftindex = index;
         }
+    }
 
-        it = c.iterator();
-        if (it == null) {
-            return false;
+    /* Returns how many of len incoming items to skip because they would be
+       evicted right away, clearing the deque first if all of its current
+       items would be evicted too. */
+    protected int prepareExtend(int len, boolean last, int maxlen) {
+        int skip = 0;
+        int n, length;
+
+        if (len >= maxlen) {
+            skip = len - maxlen;
+            if (this.listener != null) {
+                this.listener.evicted(this, this.size + skip);
+            }
+            if (this.size > 0) {
+                removeFirstInternal(this.size, null, 0);
+            }
         }
-
-        if (maxlen == 0) {
-            return consumeIterator(it);
+        if (this.leftblock.data.length < this.blocklen) {
+            /* Stay small if everything fits, with all the room on one side */
+            n = this.size + len - skip;
+            length = SMALLBLOCKLEN;
+            while (length < n) {
+                length <<= 1;
+            }
+            if (length < this.blocklen) {
+                resizeSmall(length, last ? 0 : length - this.size);
+                return skip;
+            }
+            inflate();
         }
-
         if (this.size == 0) {
-            this.leftindex = 1;
-            this.rightindex = 0;
+            if (last) {
+                this.leftindex = 1;
+                this.rightindex = 0;
+            } else {
+                this.leftindex = this.blocklen - 1;
+                this.rightindex = this.blocklen - 2;
+            }
         }
+        return skip;
+    }
 
-        boolean changed = it.hasNext();
-        if (changed) {
-            do {
-                item = it.next();
-                appendInternal(item, maxlen);
-            } while (it.hasNext());
+    protected void finishExtend(boolean last, int maxlen) {
+        if (needsTrim(maxlen)) {
+            if (this.listener != null) {
+                this.listener.evicted(this, this.size - maxlen);
+            }
+            if (last) {
+                removeFirstInternal(this.size - maxlen, null, 0);
+            } else {
+                removeLastInternal(this.size - maxlen, null, 0);
+            }
+        } else {
+            this.state++;
         }
-        return changed;
     }
 
-    public boolean addAllFirst(Collection<? extends E> c) {
-        Iterator<? extends E> it;
-        E item;
+    protected boolean extendInternal(Object[] a, int off, int len, boolean last) {
         int maxlen = this.maxlen;
+        int skip;
 
-        if (this == c) {
-            return addAllFirst(new ArrayList<>(this));
+        if (len == 0 || maxlen == 0) {
+            return false;
         }
+        skip = prepareExtend(len, last, maxlen);
+        off += skip;
+        len -= skip;
+        if (last) {
+            appendArray(a, off, len);
+        } else {
+            appendleftArray(a, off, len);
+        }
+        finishExtend(last, maxlen);
+        return true;
+    }
 
-        it = c.iterator();
-        if (it == null) {
+    protected boolean extendInternal(BlockDeque<?> src, boolean last) {
+        int maxlen = this.maxlen;
+        int len = src.size;
+        int skip, index, m;
+        Block b;
+
+        if (len == 0 || maxlen == 0) {
             return false;
         }
-
-        if (maxlen == 0) {
-            return consumeIterator(it);
+        skip = prepareExtend(len, last, maxlen);
+        len -= skip;
+        index = src.leftindex + skip;
+        b = src.blockAt(index);
+        index &= src.blockmask;
+        while (len > 0) {
+            m = src.blocklen - index;
+            if (m > len) {
+                m = len;
+            }
+            if (last) {
+                appendArray(b.data, index, m);
+            } else {
+                appendleftArray(b.data, index, m);
+            }
+            len -= m;
+            b = b.rightlink;
+            index = 0;
         }
+        finishExtend(last, maxlen);
+        return true;
+    }
 
-        if (this.size == 0) {
-            this.leftindex = BLOCKLEN - 1;
-            this.rightindex = BLOCKLEN - 2;
+    protected static void checkFromIndexSize(int off, int len, int length) {
+        if ((length | off | len) < 0 || len > length - off) {
+            throw new IndexOutOfBoundsException("Range [" + off + ", " + off + " + " + len + ") out of bounds for length " + length);
         }
+    }
 
-        boolean changed = it.hasNext();
-        if (changed) {
-            do {
-                item = it.next();
-                appendleftInternal(item, maxlen);
-            } while (it.hasNext());
+    public boolean addAllLast(Collection<? extends E> c) {
+        Object[] a;
+
+        if (c instanceof BlockDeque<?> && c != this) {
+            return extendInternal((BlockDeque<?>)c, true);
         }
-        return changed;
+        a = c.toArray();
+        return extendInternal(a, 0, a.length, true);
     }
 
-    @Override
-    public boolean addAll(Collection<? extends E> c) {
-        return addAllLast(c);
+    public boolean addAllLast(E[] a, int off, int len) {
+        checkFromIndexSize(off, len, a.length);
+        return extendInternal(a, off, len, true);
     }
 
-    @Override
-    public void clear() {
-        Block b, prevblock, leftblock;
+    public boolean addAllFirst(Collection<? extends E> c) {
+        Object[] a;
+
+        if (c instanceof BlockDeque<?> && c != this) {
+            return extendInternal((BlockDeque<?>)c, false);
+        }
+        a = c.toArray();
+        return extendInternal(a, 0, a.length, false);
+    }
+
+    public boolean addAllFirst(E[] a, int off, int len) {
+        checkFromIndexSize(off, len, a.length);
+        return extendInternal(a, off, len, false);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        return addAllLast(c);
+    }
+
+    @Override
+    public void clear() {
+        Block b, prevblock, leftblock;
         int leftindex, n, m;
         Object[] itemprtData;
         int itemptr, limit;
@@ -261,6 +1015,16 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             return;
         }
 
+        if (this.leftblock.data.length < this.blocklen) {
+            if (this.leftblock.epoch == this.epoch) {
+                Arrays.fill(this.leftblock.data, this.leftindex, this.rightindex + 1, null);
+            }
+            this.size = 0;
+            resetIndices();
+            this.state++;
+            return;
+        }
+
         try {
             b = newblock();
         } catch (OutOfMemoryError e) {
@@ -277,11 +1041,16 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
         this.size = 0;
         this.leftblock = b;
         this.rightblock = b;
-        this.leftindex = CENTER + 1;
-        this.rightindex = CENTER;
+        resetIndices();
         this.state++;
+        indexReset(b);
+        if (this.shared) {
+            /* The old blocks can't be nulled out or reused, so just drop them */
+            this.shared = false;
+            return;
+        }
 
-        m = (BLOCKLEN - leftindex > n) ? n : BLOCKLEN - leftindex;
+        m = (this.blocklen - leftindex > n) ? n : this.blocklen - leftindex;
         itemprtData = leftblock.data;
         itemptr = leftindex;
         limit = itemptr + m;
@@ -293,7 +1062,7 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
                 }
                 prevblock = leftblock;
                 leftblock = leftblock.rightlink;
-                m = (n > BLOCKLEN) ? BLOCKLEN : n;
+                m = (n > this.blocklen) ? this.blocklen : n;
                 itemprtData = leftblock.data;
                 itemptr = 0;
                 limit = itemptr + m;
@@ -328,6 +1097,30 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
         assert(-halflen <= n && n <= halflen);
 
         this.state++;
+        if (this.listener != null) {
+            this.listener.rotated(this, leftblock.data.length < this.blocklen ? len : Math.abs(n));
+        }
+        /* Only the end blocks are written to; inner blocks are only read and
+           then dropped or reused, which shared ones never are */
+        if (leftblock.epoch != this.epoch) {
+            leftblock = unshare(leftblock, 0);
+            rightblock = this.rightblock;
+        }
+        if (rightblock.epoch != this.epoch) {
+            rightblock = unshare(rightblock, this.numblocks - 1);
+        }
+        if (leftblock.data.length < this.blocklen) {
+            /* A small block has no room to grow into, so rotate in place */
+            Object[] data = leftblock.data, tmp;
+
+            if (n < 0) {
+                n += len;
+            }
+            tmp = Arrays.copyOfRange(data, leftindex + len - n, leftindex + len);
+            System.arraycopy(data, leftindex, data, leftindex + n, len - n);
+            System.arraycopy(tmp, 0, data, leftindex, n);
+            return;
+        }
         while (n > 0) {
             if (leftindex == 0) {
                 if (b == null) {
@@ -344,7 +1137,8 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
                 b.rightlink = leftblock;
                 leftblock.leftlink = b;
                 leftblock = b;
-                leftindex = BLOCKLEN;
+                leftindex = this.blocklen;
+                indexPushLeft(b);
                 b = null;
             }
             assert(leftindex > 0);
@@ -368,18 +1162,21 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
                 dest = leftindex;
                 n -= m;
                 System.arraycopy(srcData, src, destData, dest, m);
-                Arrays.fill(srcData, src, src + m, null);
+                if (rightblock.epoch == this.epoch) {
+                    Arrays.fill(srcData, src, src + m, null);
+                }
             }
             if (rightindex < 0) {
                 assert(leftblock != rightblock);
                 assert(b == null);
-                b = rightblock;
+                b = rightblock.epoch == this.epoch ? rightblock : null;
                 rightblock = rightblock.leftlink;
-                rightindex = BLOCKLEN - 1;
+                rightindex = this.blocklen - 1;
+                indexPopRight();
             }
         }
         while (n < 0) {
-            if (rightindex == BLOCKLEN - 1) {
+            if (rightindex == this.blocklen - 1) {
                 if (b == null) {
                     try {
                         b = newblock();
@@ -395,19 +1192,20 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
                 rightblock.rightlink = b;
                 rightblock = b;
                 rightindex = -1;
+                indexPushRight(b);
                 b = null;
             }
-            assert(rightindex < BLOCKLEN - 1);
+            assert(rightindex < this.blocklen - 1);
             {
                 Object[] srcData, destData;
                 int src, dest;
                 int m = -n;
 
-                if (m > BLOCKLEN - leftindex) {
-                    m = BLOCKLEN - leftindex;
+                if (m > this.blocklen - leftindex) {
+                    m = this.blocklen - leftindex;
                 }
-                if (m > BLOCKLEN - 1 - rightindex) {
-                    m = BLOCKLEN - 1 - rightindex;
+                if (m > this.blocklen - 1 - rightindex) {
+                    m = this.blocklen - 1 - rightindex;
                 }
                 assert(m > 0 && m <= len);
                 srcData = leftblock.data;
@@ -418,14 +1216,17 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
                 rightindex += m;
                 n += m;
                 System.arraycopy(srcData, src, destData, dest, m);
-                Arrays.fill(srcData, src, src + m, null);
+                if (leftblock.epoch == this.epoch) {
+                    Arrays.fill(srcData, src, src + m, null);
+                }
             }
-            if (leftindex == BLOCKLEN) {
+            if (leftindex == this.blocklen) {
                 assert(leftblock != rightblock);
                 assert(b == null);
-                b = leftblock;
+                b = leftblock.epoch == this.epoch ? leftblock : null;
                 leftblock = leftblock.rightlink;
                 leftindex = 0;
+                indexPopLeft();
             }
         }
         if (b != null) {
@@ -442,13 +1243,16 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
     }
 
     public void reverse() {
-        Block leftblock = this.leftblock;
-        Block rightblock = this.rightblock;
+        Block leftblock, rightblock;
         int leftindex = this.leftindex;
         int rightindex = this.rightindex;
         int n = this.size >> 1;
         E tmp;
 
+        unshareAll();
+        leftblock = this.leftblock;
+        rightblock = this.rightblock;
+
         while (--n >= 0) {
             assert(leftblock != rightblock || leftindex < rightindex);
 
@@ -457,7 +1261,7 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             rightblock.data[rightindex] = tmp;
 
             leftindex++;
-            if (leftindex == BLOCKLEN) {
+            if (leftindex == this.blocklen) {
                 leftblock = leftblock.rightlink;
                 leftindex = 0;
             }
@@ -465,63 +1269,147 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             rightindex--;
             if (rightindex < 0) {
                 rightblock = rightblock.leftlink;
-                rightindex = BLOCKLEN - 1;
+                rightindex = this.blocklen - 1;
             }
         }
     }
 
-    public int count(Object o) {
-        Block b = this.leftblock;
-        int index = this.leftindex;
-        int n = this.size;
-        int count = 0;
-        long startState = this.state;
-        E item;
-        boolean cmp;
+    /* Whether item counts as equal to o; checks identity first, so equals()
+       is only called for distinct objects */
+    protected static boolean eq(Object o, Object item) {
+        return item == o || (o != null && o.equals(item));
+    }
 
-        while (--n >= 0) {
-            item = (E)b.data[index];
-            cmp = item.equals(o);
-            count += cmp ? 1 : 0;
+    /* Returns the index of the first item in [start, stop) equal to o, or -1.
+       Scans a block at a time, checking for mutation (equals() may change
+       the deque) once per block and before returning a match; a null o is
+       found without calling any code, so it needs no check. */
+    protected int findFirst(Object o, int start, int stop) {
+        Block b;
+        Object[] data;
+        int i, index, limit, m, n = stop - start;
+        long startState = this.state;
 
-            if (startState != this.state) {
-                throw new IllegalStateException("deque mutated during iteration");
+        i = start + this.leftindex;
+        b = blockAt(i);
+        index = i & this.blockmask;
+        while (n > 0) {
+            data = b.data;
+            m = this.blocklen - index;
+            if (m > n) {
+                m = n;
+            }
+            limit = index + m;
+            if (o == null) {
+                for (i = index; i < limit; i++) {
+                    if (data[i] == null) {
+                        return start + i - index;
+                    }
+                }
+            } else {
+                for (i = index; i < limit; i++) {
+                    if (eq(o, data[i])) {
+                        break;
+                    }
+                }
+                if (startState != this.state) {
+                    throw mutated();
+                }
+                if (i < limit) {
+                    return start + i - index;
+                }
             }
+            start += m;
+            n -= m;
+            b = b.rightlink;
+            index = 0;
+        }
+        return -1;
+    }
 
-            index++;
-            if (index == BLOCKLEN) {
-                b = b.rightlink;
-                index = 0;
+    /* Like findFirst(), but returns the last match, scanning from stop - 1
+       down to start. */
+    protected int findLast(Object o, int start, int stop) {
+        Block b;
+        Object[] data;
+        int i, index, limit, m, n = stop - start;
+        long startState = this.state;
+
+        i = stop - 1 + this.leftindex;
+        b = blockAt(i);
+        index = i & this.blockmask;
+        while (n > 0) {
+            data = b.data;
+            m = index + 1;
+            if (m > n) {
+                m = n;
             }
+            limit = index - m;
+            if (o == null) {
+                for (i = index; i > limit; i--) {
+                    if (data[i] == null) {
+                        return stop - 1 - (index - i);
+                    }
+                }
+            } else {
+                for (i = index; i > limit; i--) {
+                    if (eq(o, data[i])) {
+                        break;
+                    }
+                }
+                if (startState != this.state) {
+                    throw mutated();
+                }
+                if (i > limit) {
+                    return stop - 1 - (index - i);
+                }
+            }
+            stop -= m;
+            n -= m;
+            b = b.leftlink;
+            index = this.blocklen - 1;
         }
-        return count;
+        return -1;
     }
 
-    @Override
-    public boolean contains(Object o) {
+    public int count(Object o) {
         Block b = this.leftblock;
+        Object[] data;
         int index = this.leftindex;
         int n = this.size;
+        int count = 0;
+        int i, limit, m;
         long startState = this.state;
-        E item;
-        boolean cmp;
 
-        while (--n >= 0) {
-            item = (E)b.data[index];
-            cmp = item.equals(o);
-            if (cmp) {
-                return cmp;
-            }
-            if (startState != this.state) {
-                throw new IllegalStateException("deque mutated during iteration");
+        while (n > 0) {
+            data = b.data;
+            m = this.blocklen - index;
+            if (m > n) {
+                m = n;
             }
-            index++;
-            if (index == BLOCKLEN) {
-                b = b.rightlink;
-                index = 0;
+            limit = index + m;
+            if (o == null) {
+                for (i = index; i < limit; i++) {
+                    count += data[i] == null ? 1 : 0;
+                }
+            } else {
+                for (i = index; i < limit; i++) {
+                    count += eq(o, data[i]) ? 1 : 0;
+                }
+                if (startState != this.state) {
+                    throw mutated();
+                }
             }
+            n -= m;
+            b = b.rightlink;
+            index = 0;
         }
-        return false;
+        return count;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return findFirst(o, 0, this.size) >= 0;
     }
 
     @Override
@@ -530,13 +1418,6 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
     }
 
     public int indexOf(Object o, int start, int stop) {
-        int i, n;
-        E item;
-        Block b = this.leftblock;
-        int index = this.leftindex;
-        long startState = this.state;
-        boolean cmp;
-
         if (stop > this.size) {
             stop = this.size;
         }
@@ -544,35 +1425,7 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             start = stop;
         }
         assert(0 <= start && start <= stop && stop <= this.size);
-
-        for (i = 0; i < start - BLOCKLEN; i += BLOCKLEN) {
-            b = b.rightlink;
-        }
-        for (; i < start; i++) {
-            index++;
-            if (index == BLOCKLEN) {
-                b = b.rightlink;
-                index = 0;
-            }
-        }
-
-        n = stop - i;
-        while (--n >= 0) {
-            item = (E)b.data[index];
-            cmp = item.equals(o);
-            if (cmp) {
-                return stop - n - 1;
-            }
-            if (startState != this.state) {
-                throw new IllegalStateException("deque mutated during iteration");
-            }
-            index++;
-            if (index == BLOCKLEN) {
-                b = b.rightlink;
-                index = 0;
-            }
-        }
-        return -1;
+        return findFirst(o, start, stop);
     }
 
     public int indexOf(Object o, int start) {
@@ -581,13 +1434,21 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
 
     @Override
     public int indexOf(Object o) {
-        return indexOf(o, 0, this.size);
+        return findFirst(o, 0, this.size);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return findLast(o, 0, this.size);
     }
 
     @Override
     public void add(int index, E element) {
         int n = this.size;
 
+        if (!validIndex(index, n + 1)) {
+            throw this.indexOutOfBounds(index);
+        }
         if (this.maxlen == this.size) {
             throw new IllegalStateException("deque already at its maximum size");
         }
@@ -599,9 +1460,75 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             this.addFirst(element);
             return;
         }
-        this.rotate(-index);
-        this.addFirst(element);
-        this.rotate(index);
+        if (index < n - index) {
+            appendleftInternal(null, Integer.MAX_VALUE);
+            shiftLeft(0, index);
+        } else {
+            appendInternal(null, Integer.MAX_VALUE);
+            shiftRight(index, n - index);
+        }
+        index += this.leftindex;
+        blockAt(index).data[index & this.blockmask] = element;
+    }
+
+    /* Moves the count items starting at index start + 1 one place to the
+       left, overwriting the item at start. */
+    protected void shiftLeft(int start, int count) {
+        int i = start + this.leftindex;
+        Block b;
+        int index = i & this.blockmask;
+        int m;
+
+        if (count > 0) {
+            unshareAll();
+        }
+        b = blockAt(i);
+        while (count > 0) {
+            m = this.blocklen - 1 - index;
+            if (m > count) {
+                m = count;
+            }
+            System.arraycopy(b.data, index + 1, b.data, index, m);
+            count -= m;
+            index += m;
+            if (count > 0) {
+                assert(index == this.blocklen - 1);
+                b.data[index] = b.rightlink.data[0];
+                count--;
+                b = b.rightlink;
+                index = 0;
+            }
+        }
+    }
+
+    /* Moves the count items starting at index start one place to the right,
+       overwriting the item at start + count. */
+    protected void shiftRight(int start, int count) {
+        int i = start + count + this.leftindex;
+        Block b;
+        int index = i & this.blockmask;
+        int m;
+
+        if (count > 0) {
+            unshareAll();
+        }
+        b = blockAt(i);
+        while (count > 0) {
+            m = index;
+            if (m > count) {
+                m = count;
+            }
+            System.arraycopy(b.data, index - m, b.data, index - m + 1, m);
+            count -= m;
+            index -= m;
+            if (count > 0) {
+                assert(index == 0);
+                b.data[index] = b.leftlink.data[this.blocklen - 1];
+                count--;
+                b = b.leftlink;
+                index = this.blocklen - 1;
+            }
+        }
     }
 
     protected boolean validIndex(int i, int limit) {
@@ -614,107 +1541,188 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
 
     @Override
     public E get(int i) {
-        Block b;
-        int n, index = i;
-
         if (!validIndex(i, this.size)) {
             throw this.indexOutOfBounds(i);
         }
 
-        if (i == 0) {
-            i = this.leftindex;
-            b = this.leftblock;
-        } else if (i == this.size - 1) {
-            i = this.rightindex;
-            b = this.rightblock;
-        } else {
-            i += this.leftindex;
-            n = i / BLOCKLEN;
-            i = i % BLOCKLEN;
-            if (index < (this.size >> 1)) {
-                b = this.leftblock;
-                while (--n >= 0) {
-                    b = b.rightlink;
-                }
-            } else {
-                n = (this.leftindex + this.size - 1) / BLOCKLEN - n;
-                b = this.rightblock;
-                while (--n >= 0) {
-                    b = b.leftlink;
-                }
-            }
-        }
-        return (E)b.data[i];
+        i += this.leftindex;
+        return (E)blockAt(i).data[i & this.blockmask];
     }
 
     @Override
     public E remove(int index) {
         E item;
+        int n = this.size;
 
-        if (!validIndex(index, this.size)) {
+        if (!validIndex(index, n)) {
             throw this.indexOutOfBounds(index);
         }
-        this.rotate(-index);
-        item = this.removeFirst();
-        this.rotate(index);
+        item = this.get(index);
+        if (index < n - 1 - index) {
+            shiftRight(0, index);
+            this.removeFirst();
+        } else {
+            shiftLeft(index, n - 1 - index);
+            this.removeLast();
+        }
         return item;
     }
 
     @Override
     public boolean remove(Object o) {
-        E item;
-        Block b = this.leftblock;
-        int i, n = this.size, index = this.leftindex;
+        int i = findFirst(o, 0, this.size);
+
+        if (i < 0) {
+            return false;
+        }
+        remove(i);
+        return true;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Block readblock, writeblock;
+        int readindex = this.leftindex, writeindex = this.leftindex;
+        int i = 0, n = this.size, removed = 0;
         long startState = this.state;
-        boolean cmp;
+        E item;
 
-        for (i = 0; i < n; i++) {
-            item = (E)b.data[index];
-            cmp = item.equals(o);
-            if (startState != this.state) {
-                throw new IllegalStateException("deque mutated during iteration");
+        Objects.requireNonNull(filter);
+        unshareAll();
+        readblock = this.leftblock;
+        writeblock = this.leftblock;
+        try {
+            for (; i < n; i++) {
+                item = (E)readblock.data[readindex];
+                if (filter.test(item)) {
+                    removed++;
+                } else {
+                    writeblock.data[writeindex] = item;
+                    writeindex++;
+                    if (writeindex == this.blocklen) {
+                        writeblock = writeblock.rightlink;
+                        writeindex = 0;
+                    }
+                }
+                if (startState != this.state) {
+                    throw mutated();
+                }
+                readindex++;
+                if (readindex == this.blocklen) {
+                    readblock = readblock.rightlink;
+                    readindex = 0;
+                }
             }
-            if (cmp) {
-                break;
+        } finally {
+            if (startState == this.state && removed > 0) {
+                // If the filter threw, keep the items it never got to see.
+                for (; i < n; i++) {
+                    writeblock.data[writeindex] = readblock.data[readindex];
+                    writeindex++;
+                    if (writeindex == this.blocklen) {
+                        writeblock = writeblock.rightlink;
+                        writeindex = 0;
+                    }
+                    readindex++;
+                    if (readindex == this.blocklen) {
+                        readblock = readblock.rightlink;
+                        readindex = 0;
+                    }
+                }
+                truncateAt(writeblock, writeindex, n - removed);
             }
-            index++;
-            if (index == BLOCKLEN) {
-                b = b.rightlink;
-                index = 0;
+        }
+        return removed > 0;
+    }
+
+    /* Drops every item from (b, index) through the right end, leaving
+       newsize items. */
+    protected void truncateAt(Block b, int index, int newsize) {
+        Block newright, prevblock;
+        int newrightindex;
+
+        if (newsize == 0) {
+            newright = this.leftblock;
+            newrightindex = (newright.data.length - 1) >> 1;
+            this.leftindex = newrightindex + 1;
+        } else if (index == 0) {
+            newright = b.leftlink;
+            newrightindex = this.blocklen - 1;
+        } else {
+            newright = b;
+            newrightindex = index - 1;
+        }
+
+        for (;;) {
+            if (b == this.rightblock) {
+                Arrays.fill(b.data, index, this.rightindex + 1, null);
+                break;
             }
+            Arrays.fill(b.data, index, this.blocklen, null);
+            b = b.rightlink;
+            index = 0;
         }
-        if (i == n) {
-            return false;
+        while (this.rightblock != newright) {
+            prevblock = this.rightblock.leftlink;
+            freeblock(this.rightblock);
+            this.rightblock = prevblock;
+            indexPopRight();
         }
-        remove(i);
-        return true;
+        this.rightindex = newrightindex;
+        this.size = newsize;
+        this.state++;
+    }
+
+    /* Removes the items from fromIndex up to toIndex, moving whichever side
+       of the gap is shorter */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        int n = toIndex - fromIndex, i;
+
+        subListRangeCheck(fromIndex, toIndex, this.size);
+        if (n == 0) {
+            return;
+        }
+        if (fromIndex < this.size - toIndex) {
+            for (i = fromIndex - 1; i >= 0; i--) {
+                set(i + n, get(i));
+            }
+            removeFirstInternal(n, null, 0);
+        } else {
+            for (i = toIndex; i < this.size; i++) {
+                set(i - n, get(i));
+            }
+            removeLastInternal(n, null, 0);
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(item -> !c.contains(item));
     }
 
     @Override
     public E set(int index, E element) {
         E oldValue;
         Block b;
-        int n, len = this.size, halflen = (len + 1) >> 1, index2 = index;
 
-        if (!validIndex(index, len)) {
+        if (!validIndex(index, this.size)) {
             throw this.indexOutOfBounds(index);
         }
 
         index += this.leftindex;
-        n = index / BLOCKLEN;
-        index = index % BLOCKLEN;
-        if (index2 <= halflen) {
-            b = this.leftblock;
-            while (--n >= 0) {
-                b = b.rightlink;
-            }
-        } else {
-            n = (this.leftindex + this.size - 1) / BLOCKLEN - n;
-            b = this.rightblock;
-            while (--n >= 0) {
-                b = b.leftlink;
-            }
+        b = blockAt(index);
+        if (b.epoch != this.epoch) {
+            b = unshare(b, index >> this.blockshift);
         }
+        index &= this.blockmask;
         oldValue = (E)b.data[index];
         b.data[index] = element;
         return oldValue;
@@ -729,7 +1737,7 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
         int indexhigh;
 
         for (b = this.leftblock; b != this.rightblock; b = b.rightlink) {
-            for (index = indexlo; index < BLOCKLEN; index++) {
+            for (index = indexlo; index < this.blocklen; index++) {
                 item = (E)b.data[index];
                 action.accept(item);
             }
@@ -742,64 +1750,502 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
         }
     }
 
-    @Override
-    public boolean equals(Object o) {
-        if (o == null) {
-            return false;
-        } else if (!(o instanceof BlockDeque<?>)) {
-            return false;
+    /* Copies every item, in order, into dest starting at destPos, with one
+       System.arraycopy() per block */
+    protected void copyItems(Object[] dest, int destPos) {
+        Block b = this.leftblock;
+        int index = this.leftindex;
+        int n = this.size, m;
+
+        while (n > 0) {
+            m = this.blocklen - index;
+            if (m > n) {
+                m = n;
+            }
+            System.arraycopy(b.data, index, dest, destPos, m);
+            destPos += m;
+            n -= m;
+            b = b.rightlink;
+            index = 0;
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] a = new Object[this.size];
+        copyItems(a, 0);
+        return a;
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        if (a.length < this.size) {
+            a = (T[])Array.newInstance(a.getClass().getComponentType(), this.size);
+        }
+        copyItems(a, 0);
+        if (a.length > this.size) {
+            a[this.size] = null;
+        }
+        return a;
+    }
+
+    /* The List hash code, computed a block at a time; hashCode() may change
+       the deque, so that is checked once per block */
+    @Override
+    public int hashCode() {
+        Block b = this.leftblock;
+        Object[] data;
+        Object item;
+        int index = this.leftindex;
+        int n = this.size;
+        int hash = 1;
+        int i, limit, m;
+        long startState = this.state;
+
+        while (n > 0) {
+            data = b.data;
+            m = this.blocklen - index;
+            if (m > n) {
+                m = n;
+            }
+            limit = index + m;
+            for (i = index; i < limit; i++) {
+                item = data[i];
+                hash = 31 * hash + (item == null ? 0 : item.hashCode());
+            }
+            if (startState != this.state) {
+                throw mutated();
+            }
+            n -= m;
+            b = b.rightlink;
+            index = 0;
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        Block b = this.leftblock;
+        Object[] data;
+        Object item;
+        int index = this.leftindex;
+        int n = this.size;
+        int i, limit, m;
+        long startState = this.state;
+        StringBuilder sb;
+
+        if (n == 0) {
+            return "[]";
+        }
+        /* Enough for short items such as small numbers without regrowing */
+        sb = new StringBuilder(Math.min(n, (Integer.MAX_VALUE - 2) / 4) * 4 + 2);
+        sb.append('[');
+        while (n > 0) {
+            data = b.data;
+            m = this.blocklen - index;
+            if (m > n) {
+                m = n;
+            }
+            limit = index + m;
+            for (i = index; i < limit; i++) {
+                item = data[i];
+                sb.append(item == this ? "(this Collection)" : item);
+                sb.append(", ");
+            }
+            if (startState != this.state) {
+                throw mutated();
+            }
+            n -= m;
+            b = b.rightlink;
+            index = 0;
+        }
+        sb.setLength(sb.length() - 2);
+        return sb.append(']').toString();
+    }
+
+    /* Equal to any List with equal items in the same order, as List
+       specifies. Another BlockDeque is compared block by block. */
+    @Override
+    public boolean equals(Object o) {
+        Block b;
+        Object[] data;
+        Iterator<?> it;
+        int index, n, i, limit, m;
+        long startState;
+
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof List<?>)) {
+            return false;
+        }
+        if (o instanceof BlockDeque<?>) {
+            return equalsDeque((BlockDeque<?>)o);
+        }
+        if (((List<?>)o).size() != this.size) {
+            return false;
+        }
+        it = ((List<?>)o).iterator();
+        b = this.leftblock;
+        index = this.leftindex;
+        n = this.size;
+        startState = this.state;
+        while (n > 0) {
+            data = b.data;
+            m = this.blocklen - index;
+            if (m > n) {
+                m = n;
+            }
+            limit = index + m;
+            for (i = index; i < limit; i++) {
+                if (!it.hasNext() || !eq(data[i], it.next())) {
+                    return false;
+                }
+            }
+            if (startState != this.state) {
+                throw mutated();
+            }
+            n -= m;
+            b = b.rightlink;
+            index = 0;
+        }
+        return !it.hasNext();
+    }
+
+    /* Walks both deques' blocks together, comparing the runs where neither
+       crosses a block boundary. */
+    protected boolean equalsDeque(BlockDeque<?> w) {
+        Block b1 = this.leftblock, b2 = w.leftblock;
+        Object[] data1, data2;
+        int index1 = this.leftindex, index2 = w.leftindex;
+        int n = this.size;
+        int i, m, offset;
+        long state1 = this.state, state2 = w.state;
+
+        if (w.size != n) {
+            return false;
+        }
+        while (n > 0) {
+            data1 = b1.data;
+            data2 = b2.data;
+            m = this.blocklen - index1;
+            if (m > w.blocklen - index2) {
+                m = w.blocklen - index2;
+            }
+            if (m > n) {
+                m = n;
+            }
+            offset = index2 - index1;
+            for (i = index1; i < index1 + m; i++) {
+                if (!eq(data1[i], data2[i + offset])) {
+                    return false;
+                }
+            }
+            if (state1 != this.state || state2 != w.state) {
+                throw mutated();
+            }
+            n -= m;
+            index1 += m;
+            index2 += m;
+            if (index1 == this.blocklen) {
+                b1 = b1.rightlink;
+                index1 = 0;
+            }
+            if (index2 == w.blocklen) {
+                b2 = b2.rightlink;
+                index2 = 0;
+            }
+        }
+        return true;
+    }
+
+    public BlockDeque(Collection<? extends E> c) {
+        this();
+        if (c != null) {
+            this.addAll(c);
+        }
+    }
+
+    public BlockDeque(Collection<? extends E> c, int maxlen) {
+        this(c, maxlen, null);
+    }
+
+    public BlockDeque(Collection<? extends E> c, int maxlen, BlockPool pool) {
+        this(pool);
+        this.maxlen = maxlen;
+        if (c != null) {
+            this.addAll(c);
+        }
+    }
+
+    public BlockDeque(Collection<? extends E> c, int maxlen, int blocklen, BlockPool pool) {
+        this(blocklen, pool);
+        this.maxlen = maxlen;
+        if (c != null) {
+            this.addAll(c);
+        }
+    }
+
+    public int getBlockLength() {
+        return this.blocklen;
+    }
+
+    public BlockPool getPool() {
+        return this.pool;
+    }
+
+    /* Installs a listener for the deque's internal events, or removes it if
+       listener is null. Without one, the hooks cost a null check. */
+    public void setListener(BlockDequeListener listener) {
+        this.listener = listener;
+    }
+
+    public BlockDequeListener getListener() {
+        return this.listener;
+    }
+
+    /* Empties the deque and gives all of its blocks, including the one an
+       empty deque keeps, back to the pool, leaving it as small as a new
+       deque. Call this when discarding a deque that was given a pool. */
+    public void recycle() {
+        clear();
+        trimToSize();
+    }
+
+    public int getMaxlen() {
+        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+    }
+
+    /**
+     * Returns a copy with the same items, maxlen, block length, pool and
+     * trim period. Each block is copied with a single arraycopy. The copy
+     * has no listener, so it doesn't report to the original's.
+     */
+    @Override
+    public BlockDeque<E> clone() {
+        BlockDeque<E> copy;
+        Block b, prev = null, nb;
+        int i, lo, hi;
+
+        try {
+            copy = (BlockDeque<E>)super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+        copy.state = 0;
+        copy.shared = false;
+        copy.indexshared = false;
+        copy.numfreeblocks = 0;
+        copy.freeblocks = null;
+        copy.freelowwater = 0;
+        copy.trimcountdown = copy.trimperiod;
+        copy.listener = null;
+        if (this.leftblock == EMPTYBLOCK) {
+            return copy;
+        }
+        if (this.leftblock.data.length < this.blocklen) {
+            nb = new Block(this.leftblock.data.length);
+            nb.epoch = copy.epoch;
+            System.arraycopy(this.leftblock.data, this.leftindex, nb.data, this.leftindex, this.size);
+            copy.leftblock = nb;
+            copy.rightblock = nb;
+            return copy;
+        }
+        if (this.blockindex != null) {
+            copy.blockindex = new Block[this.blockindex.length];
+            copy.blockindexhead = 0;
+        }
+        b = this.leftblock;
+        for (i = 0; i < this.numblocks; i++, b = b.rightlink) {
+            nb = copy.newblock();
+            lo = i == 0 ? this.leftindex : 0;
+            hi = b == this.rightblock ? this.rightindex : this.blocklen - 1;
+            System.arraycopy(b.data, lo, nb.data, lo, hi - lo + 1);
+            nb.leftlink = prev;
+            if (prev != null) {
+                prev.rightlink = nb;
+            } else {
+                copy.leftblock = nb;
+            }
+            if (copy.blockindex != null) {
+                copy.blockindex[i] = nb;
+            }
+            prev = nb;
+        }
+        copy.rightblock = prev;
+        return copy;
+    }
+
+    /* Serialized form: the default fields (block length, maxlen and trim
+       period), then the size and the items from left to right, read
+       straight out of the blocks. */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        Block b;
+        int index, indexhigh;
+        long state = this.state;
+
+        s.defaultWriteObject();
+        s.writeInt(this.size);
+        index = this.leftindex;
+        for (b = this.leftblock; b != this.rightblock; b = b.rightlink) {
+            for (; index < this.blocklen; index++) {
+                s.writeObject(b.data[index]);
+            }
+            index = 0;
+        }
+        indexhigh = this.rightindex;
+        for (; index <= indexhigh; index++) {
+            s.writeObject(b.data[index]);
+        }
+        if (state != this.state) {
+            throw mutated("deque mutated during serialization");
+        }
+    }
+
+    private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException {
+        int n;
+
+        s.defaultReadObject();
+        try {
+            checkBlockLength(this.blocklen);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+        if (this.blockshift != Integer.numberOfTrailingZeros(this.blocklen) || this.blockmask != this.blocklen - 1) {
+            throw new InvalidObjectException("inconsistent block length");
+        }
+        n = s.readInt();
+        if (this.maxlen < 0 || this.trimperiod < 0 || n < 0 || n > this.maxlen) {
+            throw new InvalidObjectException("invalid deque size " + n + " or maxlen " + this.maxlen);
+        }
+        this.leftblock = EMPTYBLOCK;
+        this.rightblock = EMPTYBLOCK;
+        this.leftindex = 0;
+        this.rightindex = -1;
+        this.numblocks = 1;
+        this.trimcountdown = this.trimperiod;
+        while (n-- > 0) {
+            appendInternal((E)s.readObject(), Integer.MAX_VALUE);
+        }
+        this.state = 0;
+    }
+
+    /* Replaces the shared block b, the pos'th from the left, with a private
+       copy of its items, and returns the copy. */
+    protected Block unshare(Block b, int pos) {
+        Block nb;
+        int lo = b == this.leftblock ? this.leftindex : 0;
+        int hi = b == this.rightblock ? this.rightindex : b.data.length - 1;
+
+        if (b.data.length == this.blocklen) {
+            nb = newblock();
         } else {
-            BlockDeque<?> w = (BlockDeque<?>)o;
-            Iterator<? extends E> it1 = null;
-            Iterator<?> it2 = null;
-            E x;
-            Object y;
-            int vs, ws;
-            boolean b;
-
-            vs = this.size;
-            ws = w.size;
-            if (this == w) {
-                return true;
-            }
-            if (vs != ws) {
-                return false;
-            }
+            nb = new Block(b.data.length);
+            nb.epoch = this.epoch;
+        }
+        if (lo <= hi) {
+            System.arraycopy(b.data, lo, nb.data, lo, hi - lo + 1);
+        }
+        if (b == this.leftblock) {
+            this.leftblock = nb;
+        } else {
+            nb.leftlink = b.leftlink;
+            nb.leftlink.rightlink = nb;
+        }
+        if (b == this.rightblock) {
+            this.rightblock = nb;
+        } else {
+            nb.rightlink = b.rightlink;
+            nb.rightlink.leftlink = nb;
+        }
+        if (this.blockindex != null) {
+            unshareIndex();
+            this.blockindex[(this.blockindexhead + pos) & (this.blockindex.length - 1)] = nb;
+        }
+        return nb;
+    }
 
-            it1 = this.iterator();
-            it2 = w.iterator();
-            for (;;) {
-                if (!it1.hasNext() || !it2.hasNext()) {
-                    break;
-                }
-                x = it1.next();
-                y = it2.next();
-                b = x.equals(y);
-                if (!b) {
-                    return false;
-                }
+    /* Copies every shared block, before operations that write all over the
+       deque */
+    protected void unshareAll() {
+        Block b = this.leftblock;
+        int i;
+
+        if (!this.shared) {
+            return;
+        }
+        for (i = 0; i < this.numblocks; i++) {
+            if (b.epoch != this.epoch) {
+                b = unshare(b, i);
             }
-            return true;
+            b = b.rightlink;
         }
+        this.shared = false;
     }
 
-    public BlockDeque(Collection<? extends E> c) {
-        this();
-        if (c != null) {
-            this.addAll(c);
+    /**
+     * Returns an unmodifiable view of the deque's current items that later
+     * changes to the deque don't affect. This takes constant time: the view
+     * shares the deque's blocks, and the deque copies a block the first time
+     * it writes into it afterwards (usually just the block at each end).
+     * Once taken, the snapshot can be handed to another thread and read
+     * there while the deque's owner keeps changing it.
+     */
+    public List<E> snapshot() {
+        Snapshot<E> snapshot = new Snapshot<>(this);
+
+        if (this.size > 0) {
+            this.epoch++;
+            this.shared = true;
+            this.indexshared = this.blockindex != null;
         }
+        return snapshot;
     }
 
-    public BlockDeque(Collection<? extends E> c, int maxlen) {
-        this();
-        this.maxlen = maxlen;
-        if (c != null) {
-            this.addAll(c);
+    protected static class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+        protected final Object[] data;
+        protected final Block[] blockindex;
+        protected final int blockindexhead;
+        protected final int leftindex;
+        protected final int size;
+        protected final int blockshift;
+        protected final int blockmask;
+
+        protected Snapshot(BlockDeque<E> deque) {
+            /* A single block's data array is captured rather than the block,
+               since a small block's array is replaced as it grows */
+            if (deque.numblocks == 1) {
+                this.data = deque.leftblock.data;
+                this.blockindex = null;
+            } else {
+                this.data = null;
+                this.blockindex = deque.blockindex;
+            }
+            this.blockindexhead = deque.blockindexhead;
+            this.leftindex = deque.leftindex;
+            this.size = deque.size;
+            this.blockshift = deque.blockshift;
+            this.blockmask = deque.blockmask;
         }
-    }
 
-    public int getMaxlen() {
-        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+        @Override
+        public E get(int i) {
+            if (i < 0 || i >= this.size) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for snapshot of length " + this.size);
+            }
+            i += this.leftindex;
+            if (this.blockindex == null) {
+                return (E)this.data[i];
+            }
+            return (E)this.blockindex[
+                (this.blockindexhead + (i >> this.blockshift)) & (this.blockindex.length - 1)
+            ].data[i & this.blockmask];
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
     }
 
     @Override
@@ -836,7 +2282,7 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
 
             if (this.deque.state != this.state) {
                 this.counter = 0;
-                throw new IllegalStateException("deque mutated during iteration");
+                throw mutated();
             }
             if (this.counter == 0) {
                 throw new NoSuchElementException();
@@ -846,7 +2292,7 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             item = (E)this.b.data[this.index];
             this.index++;
             this.counter--;
-            if (this.index == BLOCKLEN && this.counter > 0) {
+            if (this.index == this.deque.blocklen && this.counter > 0) {
                 this.b = this.b.rightlink;
                 this.index = 0;
             }
@@ -854,6 +2300,122 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
         }
     }
 
+    @Override
+    public Spliterator<E> spliterator() {
+        return new DequeSpliterator(this, 0, -1, 0);
+    }
+
+    /* Splits only on block boundaries, so each half walks whole blocks. */
+    protected class DequeSpliterator implements Spliterator<E> {
+        BlockDeque<E> deque;
+        int origin;
+        int fence;
+        long state;
+
+        DequeSpliterator(BlockDeque<E> deque, int origin, int fence, long state) {
+            this.deque = deque;
+            this.origin = origin;
+            this.fence = fence;
+            this.state = state;
+        }
+
+        int getFence() {
+            if (this.fence < 0) {
+                this.state = this.deque.state;
+                this.fence = this.deque.size;
+            }
+            return this.fence;
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int lo = this.origin, hi = getFence();
+            int leftindex = this.deque.leftindex;
+            int mid = ((lo + hi) >>> 1) + leftindex;
+
+            mid -= (mid & this.deque.blockmask) + leftindex;
+            if (mid <= lo) {
+                mid += this.deque.blocklen;
+            }
+            if (mid >= hi) {
+                return null;
+            }
+            this.origin = mid;
+            return new DequeSpliterator(this.deque, lo, mid, this.state);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            int i = this.origin;
+            E item;
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (i >= getFence()) {
+                return false;
+            }
+            if (this.deque.state != this.state) {
+                throw mutated();
+            }
+            this.origin = i + 1;
+            i += this.deque.leftindex;
+            item = (E)this.deque.blockAt(i).data[i & this.deque.blockmask];
+            action.accept(item);
+            if (this.deque.state != this.state) {
+                throw mutated();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            int hi = getFence();
+            int i = this.origin + this.deque.leftindex;
+            int n = hi - this.origin;
+            int index, m, limit;
+            Block b;
+
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            if (n <= 0) {
+                return;
+            }
+            if (this.deque.state != this.state) {
+                throw mutated();
+            }
+            this.origin = hi;
+            b = this.deque.blockAt(i);
+            index = i & this.deque.blockmask;
+            while (n > 0) {
+                m = this.deque.blocklen - index;
+                if (m > n) {
+                    m = n;
+                }
+                n -= m;
+                for (limit = index + m; index < limit; index++) {
+                    action.accept((E)b.data[index]);
+                }
+                if (this.deque.state != this.state) {
+                    throw mutated();
+                }
+                b = b.rightlink;
+                index = 0;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - this.origin;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
     @Override
     public Iterator<E> descendingIterator() {
         return new DequeRevIter(this);
@@ -877,7 +2439,7 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
 
             if (this.deque.state != this.state) {
                 this.counter = 0;
-                throw new IllegalStateException("deque mutated during iteration");
+                throw mutated();
             }
             assert(!(this.b == this.deque.leftblock && this.index < this.deque.leftindex));
 
@@ -886,10 +2448,308 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
             this.counter--;
             if (this.index < 0 && this.counter > 0) {
                 this.b = this.b.leftlink;
-                this.index = BLOCKLEN - 1;
+                this.index = this.deque.blocklen - 1;
+            }
+            return item;
+        }
+    }
+
+    @Override
+    public ListIterator<E> listIterator() {
+        return new DequeListIter(this, 0, null);
+    }
+
+    @Override
+    public ListIterator<E> listIterator(int index) {
+        if (!validIndex(index, this.size + 1)) {
+            throw this.indexOutOfBounds(index);
+        }
+        return new DequeListIter(this, index, null);
+    }
+
+    /* Walks the blocks like DequeIter, in both directions. The cursor sits
+       between two items; (b, index) is the slot just after it, which may be
+       one past the end of b. Changes made through the iterator move it to
+       the new cursor position with blockAt(), since they can replace blocks.
+       When sub is set the iterator is confined to that sublist and keeps
+       its size up to date. */
+    protected class DequeListIter implements ListIterator<E> {
+        Block b;
+        int index;
+        BlockDeque<E> deque;
+        SubList sub;
+        long state;
+        int cursor;
+        int lastret = -1;
+
+        DequeListIter(BlockDeque<E> deque, int cursor, SubList sub) {
+            this.deque = deque;
+            this.sub = sub;
+            this.state = deque.state;
+            seek(cursor);
+        }
+
+        protected void seek(int cursor) {
+            int i = cursor + this.deque.leftindex;
+
+            this.cursor = cursor;
+            if (cursor > 0) {
+                this.b = this.deque.blockAt(i - 1);
+                this.index = ((i - 1) & this.deque.blockmask) + 1;
+            } else {
+                this.b = this.deque.leftblock;
+                this.index = i;
+            }
+        }
+
+        protected int lo() {
+            return this.sub == null ? 0 : this.sub.offset;
+        }
+
+        protected int hi() {
+            return this.sub == null ? this.deque.size : this.sub.offset + this.sub.size;
+        }
+
+        protected void checkState() {
+            if (this.deque.state != this.state) {
+                throw mutated();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.cursor < hi();
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return this.cursor > lo();
+        }
+
+        @Override
+        public int nextIndex() {
+            return this.cursor - lo();
+        }
+
+        @Override
+        public int previousIndex() {
+            return this.cursor - lo() - 1;
+        }
+
+        @Override
+        public E next() {
+            E item;
+
+            checkState();
+            if (this.cursor >= hi()) {
+                throw new NoSuchElementException();
+            }
+            if (this.index == this.deque.blocklen) {
+                this.b = this.b.rightlink;
+                this.index = 0;
+            }
+            item = (E)this.b.data[this.index];
+            this.index++;
+            this.lastret = this.cursor;
+            this.cursor++;
+            return item;
+        }
+
+        @Override
+        public E previous() {
+            E item;
+
+            checkState();
+            if (this.cursor <= lo()) {
+                throw new NoSuchElementException();
+            }
+            if (this.index == 0) {
+                this.b = this.b.leftlink;
+                this.index = this.deque.blocklen;
+            }
+            this.index--;
+            item = (E)this.b.data[this.index];
+            this.cursor--;
+            this.lastret = this.cursor;
+            return item;
+        }
+
+        @Override
+        public void set(E e) {
+            if (this.lastret < 0) {
+                throw new IllegalStateException();
+            }
+            checkState();
+            this.deque.set(this.lastret, e);
+            seek(this.cursor);
+        }
+
+        @Override
+        public void add(E e) {
+            checkState();
+            this.deque.add(this.cursor, e);
+            moved(this.cursor + 1, 1);
+        }
+
+        @Override
+        public void remove() {
+            if (this.lastret < 0) {
+                throw new IllegalStateException();
+            }
+            checkState();
+            this.deque.remove(this.lastret);
+            moved(this.lastret, -1);
+        }
+
+        protected void moved(int cursor, int delta) {
+            if (this.sub != null) {
+                this.sub.resized(delta);
+            }
+            this.state = this.deque.state;
+            this.lastret = -1;
+            seek(cursor);
+        }
+    }
+
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, this.size);
+        return new SubList(null, fromIndex, toIndex - fromIndex);
+    }
+
+    protected static void subListRangeCheck(int fromIndex, int toIndex, int size) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException(
+                "Range [" + fromIndex + ", " + toIndex + ") out of bounds for length " + size
+            );
+        }
+    }
+
+    /* A view of the items from offset to offset + size. Reads go straight to
+       the deque's blocks; changes go through the deque and are counted in
+       this sublist and its parents. Any other change to the deque makes the
+       view unusable. */
+    protected class SubList extends AbstractList<E> implements RandomAccess {
+        final SubList parent;
+        final int offset;
+        int size;
+        long state;
+
+        SubList(SubList parent, int offset, int size) {
+            this.parent = parent;
+            this.offset = offset;
+            this.size = size;
+            this.state = BlockDeque.this.state;
+        }
+
+        protected void checkState() {
+            if (BlockDeque.this.state != this.state) {
+                throw mutated("deque mutated outside of the sublist");
+            }
+        }
+
+        protected void checkIndex(int i, int limit) {
+            if (i < 0 || i >= limit) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + this.size);
+            }
+        }
+
+        protected void resized(int delta) {
+            for (SubList s = this; s != null; s = s.parent) {
+                s.size += delta;
+                s.state = BlockDeque.this.state;
             }
+        }
+
+        @Override
+        public int size() {
+            checkState();
+            return this.size;
+        }
+
+        @Override
+        public E get(int i) {
+            checkState();
+            checkIndex(i, this.size);
+            return BlockDeque.this.get(this.offset + i);
+        }
+
+        @Override
+        public E set(int i, E element) {
+            checkState();
+            checkIndex(i, this.size);
+            return BlockDeque.this.set(this.offset + i, element);
+        }
+
+        @Override
+        public void add(int i, E element) {
+            checkState();
+            checkIndex(i, this.size + 1);
+            BlockDeque.this.add(this.offset + i, element);
+            resized(1);
+        }
+
+        @Override
+        public E remove(int i) {
+            E item;
+
+            checkState();
+            checkIndex(i, this.size);
+            item = BlockDeque.this.remove(this.offset + i);
+            resized(-1);
             return item;
         }
+
+        @Override
+        protected void removeRange(int fromIndex, int toIndex) {
+            checkState();
+            if (fromIndex < toIndex) {
+                BlockDeque.this.removeRange(this.offset + fromIndex, this.offset + toIndex);
+                resized(fromIndex - toIndex);
+            }
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            int i;
+
+            checkState();
+            i = findFirst(o, this.offset, this.offset + this.size);
+            return i < 0 ? -1 : i - this.offset;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            int i;
+
+            checkState();
+            i = findLast(o, this.offset, this.offset + this.size);
+            return i < 0 ? -1 : i - this.offset;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return listIterator(0);
+        }
+
+        @Override
+        public ListIterator<E> listIterator(int index) {
+            checkState();
+            checkIndex(index, this.size + 1);
+            return new DequeListIter(BlockDeque.this, this.offset + index, this);
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex) {
+            checkState();
+            subListRangeCheck(fromIndex, toIndex, this.size);
+            return new SubList(this, this.offset + fromIndex, toIndex - fromIndex);
+        }
     }
 
     // ****************************************************
@@ -987,27 +2847,8 @@ public class BlockDeque<E> extends AbstractList<E> implements Deque<E> {
 
     @Override
     public boolean removeLastOccurrence(Object o) {
-        E item;
-        Block b = this.rightblock;
-        int i, n = this.size, index = this.rightindex;
-        long startState = this.state;
-        boolean cmp;
+        int i = findLast(o, 0, this.size);
 
-        for (i = n - 1; i >= 0; i--) {
-            item = (E)b.data[index];
-            cmp = item.equals(o);
-            if (startState != this.state) {
-                throw new IllegalStateException("deque mutated during iteration");
-            }
-            if (cmp) {
-                break;
-            }
-            index--;
-            if (index == -1) {
-                b = b.leftlink;
-                index = BLOCKLEN - 1;
-            }
-        }
         if (i < 0) {
             return false;
         }
@@ -0,0 +1,35 @@
+package io.github.gaming32.stdpy;
+
+/* Hooks into what a BlockDeque does internally, for monitoring. Install one
+   with BlockDeque.setListener(); a deque without one only pays a null check
+   at each hook. One listener may serve many deques. The methods are called
+   on the thread using the deque, in the middle of its operations, so they
+   must be cheap and must not touch the deque.
+
+   BlockDequeMetrics counts everything, and JfrBlockDequeListener, in the
+   stdpy-jfr artifact, also emits Flight Recorder events. */
+public interface BlockDequeListener {
+    /* The deque took a full-length block; cached says whether it came from
+       its free blocks or its pool rather than being allocated. */
+    default void blockAcquired(BlockDeque<?> deque, boolean cached) {
+    }
+
+    /* The deque gave up a full-length block; cached says whether it was kept
+       for reuse rather than left to the garbage collector. */
+    default void blockReleased(BlockDeque<?> deque, boolean cached) {
+    }
+
+    /* rotate() moved this many items from one end to the other. */
+    default void rotated(BlockDeque<?> deque, int moved) {
+    }
+
+    /* This many items were dropped to stay within maxlen, counting incoming
+       items that were dropped before ever being added. */
+    default void evicted(BlockDeque<?> deque, int count) {
+    }
+
+    /* A fail-fast IllegalStateException is about to be thrown because the
+       deque was changed during an iteration, search or view. */
+    default void mutationDetected(BlockDeque<?> deque) {
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.gaming32.stdpy;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/* A listener that counts the events of every deque it is installed on.
+   The counters can be read (and reset) from any thread, which makes it easy
+   to scrape them into a monitoring system. */
+public class BlockDequeMetrics implements BlockDequeListener {
+    protected final LongAdder blocksAllocated = new LongAdder();
+    protected final LongAdder blocksReused = new LongAdder();
+    protected final LongAdder blocksCached = new LongAdder();
+    protected final LongAdder blocksDropped = new LongAdder();
+    protected final LongAdder rotations = new LongAdder();
+    protected final LongAdder itemsRotated = new LongAdder();
+    protected final LongAdder evictions = new LongAdder();
+    protected final LongAdder mutationErrors = new LongAdder();
+
+    @Override
+    public void blockAcquired(BlockDeque<?> deque, boolean cached) {
+        (cached ? this.blocksReused : this.blocksAllocated).increment();
+    }
+
+    @Override
+    public void blockReleased(BlockDeque<?> deque, boolean cached) {
+        (cached ? this.blocksCached : this.blocksDropped).increment();
+    }
+
+    @Override
+    public void rotated(BlockDeque<?> deque, int moved) {
+        this.rotations.increment();
+        this.itemsRotated.add(moved);
+    }
+
+    @Override
+    public void evicted(BlockDeque<?> deque, int count) {
+        this.evictions.add(count);
+    }
+
+    @Override
+    public void mutationDetected(BlockDeque<?> deque) {
+        this.mutationErrors.increment();
+    }
+
+    /* Blocks that had to be allocated: misses of the free blocks and pool */
+    public long getBlocksAllocated() {
+        return this.blocksAllocated.sum();
+    }
+
+    /* Blocks taken from the free blocks or pool: hits */
+    public long getBlocksReused() {
+        return this.blocksReused.sum();
+    }
+
+    /* Freed blocks kept for reuse */
+    public long getBlocksCached() {
+        return this.blocksCached.sum();
+    }
+
+    /* Freed blocks left to the garbage collector */
+    public long getBlocksDropped() {
+        return this.blocksDropped.sum();
+    }
+
+    public double getBlockHitRate() {
+        long hits = getBlocksReused(), total = hits + getBlocksAllocated();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+
+    public long getRotations() {
+        return this.rotations.sum();
+    }
+
+    public long getItemsRotated() {
+        return this.itemsRotated.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public long getMutationErrors() {
+        return this.mutationErrors.sum();
+    }
+
+    public void reset() {
+        this.blocksAllocated.reset();
+        this.blocksReused.reset();
+        this.blocksCached.reset();
+        this.blocksDropped.reset();
+        this.rotations.reset();
+        this.itemsRotated.reset();
+        this.evictions.reset();
+        this.mutationErrors.reset();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() +
+            "(blocksAllocated=" + getBlocksAllocated() +
+            ", blocksReused=" + getBlocksReused() +
+            ", blocksCached=" + getBlocksCached() +
+            ", blocksDropped=" + getBlocksDropped() +
+            ", rotations=" + getRotations() +
+            ", itemsRotated=" + getItemsRotated() +
+            ", evictions=" + getEvictions() +
+            ", mutationErrors=" + getMutationErrors() + ")";
+    }
+}
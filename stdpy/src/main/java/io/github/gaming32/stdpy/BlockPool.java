@@ -0,0 +1,231 @@
+package io.github.gaming32.stdpy;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/* A cache of empty blocks that can be shared by many BlockDeques, so that
+   short-lived deques reuse each other's blocks instead of allocating new
+   ones. A deque given a pool takes its blocks from it and hands every block
+   it frees back to it; blocks a full pool can't take are dropped for the
+   garbage collector, just like a full freeblocks array does.
+*/
+public abstract class BlockPool {
+    protected final LongAdder hits = new LongAdder();
+    protected final LongAdder misses = new LongAdder();
+    protected final LongAdder releases = new LongAdder();
+    protected final LongAdder discards = new LongAdder();
+    protected final int blockLength;
+
+    BlockPool(int blockLength) {
+        BlockDeque.checkBlockLength(blockLength);
+        this.blockLength = blockLength;
+    }
+
+    /* One stack of blocks per thread, holding at most capacity blocks. No
+       locking is needed, but blocks freed on one thread can only be reused
+       by deques running on that same thread. */
+    public static BlockPool threadLocal(int capacity) {
+        return threadLocal(capacity, BlockDeque.BLOCKLEN);
+    }
+
+    public static BlockPool threadLocal(int capacity, int blockLength) {
+        return new ThreadLocalPool(capacity, blockLength);
+    }
+
+    /* stripes stacks shared by all threads, each guarded by its own lock and
+       holding at most capacity / stripes blocks. A thread always uses the
+       same stripe, so contention only happens between threads that hash to
+       the same one. */
+    public static BlockPool striped(int stripes, int capacity) {
+        return striped(stripes, capacity, BlockDeque.BLOCKLEN);
+    }
+
+    public static BlockPool striped(int stripes, int capacity, int blockLength) {
+        return new StripedPool(stripes, capacity, blockLength);
+    }
+
+    /* Returns an empty block, or null if the pool has none. */
+    abstract BlockDeque.Block poll();
+
+    /* Returns false if the pool is full. */
+    abstract boolean offer(BlockDeque.Block b);
+
+    /* Drops every cached block. */
+    public abstract void clear();
+
+    /* Returns a cached block, or null (a miss) if the caller has to allocate
+       one itself. */
+    BlockDeque.Block acquire() {
+        BlockDeque.Block b = poll();
+        if (b != null) {
+            this.hits.increment();
+            return b;
+        }
+        this.misses.increment();
+        return null;
+    }
+
+    /* Returns false if the block was discarded */
+    boolean release(BlockDeque.Block b) {
+        /* Don't let a cached block keep another deque's blocks alive */
+        b.leftlink = null;
+        b.rightlink = null;
+        if (offer(b)) {
+            this.releases.increment();
+            return true;
+        }
+        this.discards.increment();
+        return false;
+    }
+
+    /* Only deques with this block length can use the pool */
+    public int getBlockLength() {
+        return this.blockLength;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getReleases() {
+        return this.releases.sum();
+    }
+
+    public long getDiscards() {
+        return this.discards.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits(), total = hits + getMisses();
+        return total == 0 ? 0.0 : (double)hits / total;
+    }
+
+    public void resetCounters() {
+        this.hits.reset();
+        this.misses.reset();
+        this.releases.reset();
+        this.discards.reset();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() +
+            "(hits=" + getHits() +
+            ", misses=" + getMisses() +
+            ", releases=" + getReleases() +
+            ", discards=" + getDiscards() + ")";
+    }
+
+    protected static class Stack {
+        protected final BlockDeque.Block[] blocks;
+        protected int size;
+
+        protected Stack(int capacity) {
+            this.blocks = new BlockDeque.Block[capacity];
+        }
+
+        protected BlockDeque.Block pop() {
+            if (this.size == 0) {
+                return null;
+            }
+            BlockDeque.Block b = this.blocks[--this.size];
+            this.blocks[this.size] = null;
+            return b;
+        }
+
+        protected boolean push(BlockDeque.Block b) {
+            if (this.size == this.blocks.length) {
+                return false;
+            }
+            this.blocks[this.size++] = b;
+            return true;
+        }
+
+        protected void clear() {
+            while (this.size > 0) {
+                this.blocks[--this.size] = null;
+            }
+        }
+    }
+
+    protected static class ThreadLocalPool extends BlockPool {
+        protected final ThreadLocal<Stack> stacks;
+
+        protected ThreadLocalPool(int capacity, int blockLength) {
+            super(blockLength);
+            if (capacity < 0) {
+                throw new IllegalArgumentException("capacity must be non-negative");
+            }
+            this.stacks = ThreadLocal.withInitial(() -> new Stack(capacity));
+        }
+
+        @Override
+        BlockDeque.Block poll() {
+            return this.stacks.get().pop();
+        }
+
+        @Override
+        boolean offer(BlockDeque.Block b) {
+            return this.stacks.get().push(b);
+        }
+
+        /* Only the calling thread's stack can be reached from here */
+        @Override
+        public void clear() {
+            this.stacks.get().clear();
+        }
+    }
+
+    protected static class StripedPool extends BlockPool {
+        protected final Stack[] stripes;
+
+        protected StripedPool(int stripes, int capacity, int blockLength) {
+            super(blockLength);
+            if (stripes <= 0) {
+                throw new IllegalArgumentException("stripes must be positive");
+            }
+            if (capacity < 0) {
+                throw new IllegalArgumentException("capacity must be non-negative");
+            }
+            this.stripes = new Stack[stripes];
+            for (int i = 0; i < stripes; i++) {
+                /* Spread the remainder over the first stripes */
+                this.stripes[i] = new Stack(capacity / stripes + (i < capacity % stripes ? 1 : 0));
+            }
+        }
+
+        protected Stack stripe() {
+            long id = Thread.currentThread().getId();
+            int h = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+            return this.stripes[(h >>> 1) % this.stripes.length];
+        }
+
+        @Override
+        BlockDeque.Block poll() {
+            Stack stack = stripe();
+            synchronized (stack) {
+                return stack.pop();
+            }
+        }
+
+        @Override
+        boolean offer(BlockDeque.Block b) {
+            Stack stack = stripe();
+            synchronized (stack) {
+                return stack.push(b);
+            }
+        }
+
+        @Override
+        public void clear() {
+            for (Stack stack : this.stripes) {
+                synchronized (stack) {
+                    stack.clear();
+                }
+            }
+        }
+    }
+}
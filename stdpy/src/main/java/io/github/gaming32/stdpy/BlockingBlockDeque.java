@@ -0,0 +1,724 @@
+package io.github.gaming32.stdpy;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/* A BlockingDeque backed by a BlockDeque, guarded by a single lock in the
+   same way as LinkedBlockingDeque. Storage is in blocks of BlockDeque.BLOCKLEN
+   items, so there is no per-item node allocation.
+
+   What happens when an item is added to a full deque is chosen by the
+   Policy. BLOCK makes producers wait (put) or fail (offer, add) as in
+   LinkedBlockingDeque. DROP_OLDEST keeps Python's deque semantics: the item
+   is always accepted and one is discarded from the opposite end, so
+   producers never wait.
+
+   Iterators work on a snapshot taken when they are created. Null items are
+   not allowed.
+*/
+@SuppressWarnings("unchecked")
+public class BlockingBlockDeque<E> extends AbstractQueue<E> implements BlockingDeque<E> {
+    public enum Policy {
+        BLOCK,
+        DROP_OLDEST
+    }
+
+    protected final BlockDeque<E> deque;
+    protected final int maxlen;
+    protected final Policy policy;
+
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition notEmpty = lock.newCondition();
+    protected final Condition notFull = lock.newCondition();
+
+    public BlockingBlockDeque() {
+        this(Integer.MAX_VALUE, Policy.BLOCK);
+    }
+
+    public BlockingBlockDeque(int maxlen) {
+        this(maxlen, Policy.BLOCK);
+    }
+
+    public BlockingBlockDeque(int maxlen, Policy policy) {
+        if (maxlen <= 0) {
+            throw new IllegalArgumentException("maxlen must be positive");
+        }
+        Objects.requireNonNull(policy);
+        this.maxlen = maxlen;
+        this.policy = policy;
+        this.deque = new BlockDeque<>(null, policy == Policy.DROP_OLDEST ? maxlen : Integer.MAX_VALUE);
+    }
+
+    public BlockingBlockDeque(Collection<? extends E> c) {
+        this(Integer.MAX_VALUE, Policy.BLOCK);
+        for (E item : c) {
+            addLast(item);
+        }
+    }
+
+    public int getMaxlen() {
+        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+    }
+
+    public Policy getPolicy() {
+        return this.policy;
+    }
+
+    // Must hold lock
+    protected boolean isFull() {
+        return this.policy == Policy.BLOCK && this.deque.size >= this.maxlen;
+    }
+
+    // Must hold lock and have checked isFull()
+    protected void linkLast(E e) {
+        this.deque.addLast(e);
+        this.notEmpty.signal();
+    }
+
+    // Must hold lock and have checked isFull()
+    protected void linkFirst(E e) {
+        this.deque.addFirst(e);
+        this.notEmpty.signal();
+    }
+
+    // Must hold lock and have checked the deque is not empty
+    protected E unlinkFirst() {
+        E item = this.deque.removeFirst();
+        this.notFull.signal();
+        return item;
+    }
+
+    // Must hold lock and have checked the deque is not empty
+    protected E unlinkLast() {
+        E item = this.deque.removeLast();
+        this.notFull.signal();
+        return item;
+    }
+
+    // ****************************************************
+    // *                   Insertion                      *
+    // ****************************************************
+
+    @Override
+    public boolean offerFirst(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lock();
+        try {
+            if (isFull()) {
+                return false;
+            }
+            linkFirst(e);
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offerLast(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lock();
+        try {
+            if (isFull()) {
+                return false;
+            }
+            linkLast(e);
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void addFirst(E e) {
+        if (!offerFirst(e)) {
+            throw new IllegalStateException("Deque full");
+        }
+    }
+
+    @Override
+    public void addLast(E e) {
+        if (!offerLast(e)) {
+            throw new IllegalStateException("Deque full");
+        }
+    }
+
+    @Override
+    public void putFirst(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                this.notFull.await();
+            }
+            linkFirst(e);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void putLast(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                this.notFull.await();
+            }
+            linkLast(e);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offerFirst(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = this.notFull.awaitNanos(nanos);
+            }
+            linkFirst(e);
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offerLast(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        this.lock.lockInterruptibly();
+        try {
+            while (isFull()) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = this.notFull.awaitNanos(nanos);
+            }
+            linkLast(e);
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // ****************************************************
+    // *                    Removal                       *
+    // ****************************************************
+
+    @Override
+    public E pollFirst() {
+        this.lock.lock();
+        try {
+            return this.deque.size == 0 ? null : unlinkFirst();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public E pollLast() {
+        this.lock.lock();
+        try {
+            return this.deque.size == 0 ? null : unlinkLast();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public E removeFirst() {
+        E item = pollFirst();
+        if (item == null) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        return item;
+    }
+
+    @Override
+    public E removeLast() {
+        E item = pollLast();
+        if (item == null) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        return item;
+    }
+
+    @Override
+    public E takeFirst() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.deque.size == 0) {
+                this.notEmpty.await();
+            }
+            return unlinkFirst();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public E takeLast() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.deque.size == 0) {
+                this.notEmpty.await();
+            }
+            return unlinkLast();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public E pollFirst(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+
+        this.lock.lockInterruptibly();
+        try {
+            while (this.deque.size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = this.notEmpty.awaitNanos(nanos);
+            }
+            return unlinkFirst();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public E pollLast(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+
+        this.lock.lockInterruptibly();
+        try {
+            while (this.deque.size == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = this.notEmpty.awaitNanos(nanos);
+            }
+            return unlinkLast();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeFirstOccurrence(Object o) {
+        if (o == null) {
+            return false;
+        }
+        this.lock.lock();
+        try {
+            if (this.deque.removeFirstOccurrence(o)) {
+                this.notFull.signal();
+                return true;
+            }
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeLastOccurrence(Object o) {
+        if (o == null) {
+            return false;
+        }
+        this.lock.lock();
+        try {
+            if (this.deque.removeLastOccurrence(o)) {
+                this.notFull.signal();
+                return true;
+            }
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        Objects.requireNonNull(filter);
+        this.lock.lock();
+        try {
+            if (this.deque.removeIf(filter)) {
+                this.notFull.signalAll();
+                return true;
+            }
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(c::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(item -> !c.contains(item));
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int size;
+
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        if (maxElements <= 0) {
+            return 0;
+        }
+        this.lock.lock();
+        size = this.deque.size();
+        try {
+            return this.deque.drainTo(c, maxElements);
+        } finally {
+            /* Even if c.add() threw partway, the items it took are gone */
+            if (this.deque.size() < size) {
+                this.notFull.signalAll();
+            }
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        this.lock.lock();
+        try {
+            this.deque.clear();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /* See BlockDeque.snapshot(). The snapshot can be read without the lock
+       while other threads keep using the deque. */
+    public List<E> snapshot() {
+        this.lock.lock();
+        try {
+            return this.deque.snapshot();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /* See BlockDeque.setListener() */
+    public void setListener(BlockDequeListener listener) {
+        this.lock.lock();
+        try {
+            this.deque.setListener(listener);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /* See BlockDeque.trimToSize() */
+    public void trimToSize() {
+        this.lock.lock();
+        try {
+            this.deque.trimToSize();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /* See BlockDeque.setTrimPeriod() */
+    public void setTrimPeriod(int period) {
+        this.lock.lock();
+        try {
+            this.deque.setTrimPeriod(period);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // ****************************************************
+    // *                   Inspection                     *
+    // ****************************************************
+
+    @Override
+    public E peekFirst() {
+        this.lock.lock();
+        try {
+            return this.deque.peekFirst();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public E peekLast() {
+        this.lock.lock();
+        try {
+            return this.deque.peekLast();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public E getFirst() {
+        E item = peekFirst();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return item;
+    }
+
+    @Override
+    public E getLast() {
+        E item = peekLast();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return item;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        this.lock.lock();
+        try {
+            return this.deque.contains(o);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        this.lock.lock();
+        try {
+            return this.deque.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        this.lock.lock();
+        try {
+            if (this.policy == Policy.DROP_OLDEST || this.maxlen == Integer.MAX_VALUE) {
+                return Integer.MAX_VALUE;
+            }
+            return this.maxlen - this.deque.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        this.lock.lock();
+        try {
+            return this.deque.toArray();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        this.lock.lock();
+        try {
+            return this.deque.toArray(a);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /* Iterates over a snapshot of the deque, taken under the lock, so it
+       never throws because of other threads' changes and may not see them */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(false);
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new Itr(true);
+    }
+
+    protected class Itr implements Iterator<E> {
+        protected final ListIterator<E> it;
+        protected final boolean descending;
+        protected E last;
+
+        protected Itr(boolean descending) {
+            List<E> items = snapshot();
+
+            this.it = items.listIterator(descending ? items.size() : 0);
+            this.descending = descending;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.descending ? this.it.hasPrevious() : this.it.hasNext();
+        }
+
+        @Override
+        public E next() {
+            this.last = this.descending ? this.it.previous() : this.it.next();
+            return this.last;
+        }
+
+        /* Removes the item last returned if it is still in the deque,
+           looking for that very object from the end the iteration started at */
+        @Override
+        public void remove() {
+            E item = this.last;
+
+            if (item == null) {
+                throw new IllegalStateException();
+            }
+            this.last = null;
+            removeItem(item, this.descending);
+        }
+    }
+
+    protected void removeItem(Object item, boolean fromLast) {
+        BlockDeque<E> deque = this.deque;
+        int n, i, index;
+
+        this.lock.lock();
+        try {
+            n = deque.size;
+            for (i = 0; i < n; i++) {
+                index = fromLast ? n - 1 - i : i;
+                if (deque.get(index) == item) {
+                    deque.remove(index);
+                    this.notFull.signal();
+                    return;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // ****************************************************
+    // *  Remaining implementation of BlockingDeque<E>    *
+    // ****************************************************
+
+    @Override
+    public boolean add(E e) {
+        addLast(e);
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        return offerLast(e);
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        putLast(e);
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        return offerLast(e, timeout, unit);
+    }
+
+    @Override
+    public E remove() {
+        return removeFirst();
+    }
+
+    @Override
+    public E poll() {
+        return pollFirst();
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        return takeFirst();
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return pollFirst(timeout, unit);
+    }
+
+    @Override
+    public E element() {
+        return getFirst();
+    }
+
+    @Override
+    public E peek() {
+        return peekFirst();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return removeFirstOccurrence(o);
+    }
+
+    @Override
+    public void push(E e) {
+        addFirst(e);
+    }
+
+    @Override
+    public E pop() {
+        return removeFirst();
+    }
+}
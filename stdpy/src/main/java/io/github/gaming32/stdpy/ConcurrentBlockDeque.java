@@ -0,0 +1,635 @@
+package io.github.gaming32.stdpy;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* A thread-safe deque with the same linked block layout as BlockDeque.
+
+   Each end has its own lock, so a thread working at the left end never
+   waits for one working at the right end. The only shared state is the item
+   count: a removal first decrements it with a CAS (reserve()), which is what
+   stops both ends from taking the same last item, and an addition increments
+   it after the item is stored, which publishes the item to the other end.
+
+   An end may lag one slot behind a block boundary (leftindex == BLOCKLEN or
+   rightindex == -1) and only steps onto the next block once it has reserved
+   an item there, so the two ends never race over a link that is still being
+   written. Items removed from the middle are overwritten with REMOVED rather
+   than shifted, so items never move once stored; the ends skip over REMOVED
+   slots as they reach them. Together these let the iterators walk the blocks
+   and be weakly consistent instead of failing on mutation.
+
+   When a maxlen is set, additions take both locks so that trimming the
+   opposite end is atomic with the addition. Null items are not allowed.
+*/
+@SuppressWarnings("unchecked")
+public class ConcurrentBlockDeque<E> extends AbstractCollection<E> implements Deque<E> {
+    protected static final int BLOCKLEN = 64;
+    protected static final int CENTER = ((BLOCKLEN - 1) / 2);
+    protected static final Object REMOVED = new Object();
+
+    protected static class Block {
+        protected Block leftlink;
+        protected Object[] data = new Object[BLOCKLEN];
+        protected Block rightlink;
+    }
+
+    protected final ReentrantLock leftLock = new ReentrantLock();
+    protected final ReentrantLock rightLock = new ReentrantLock();
+    protected final AtomicInteger count = new AtomicInteger();
+    protected final int maxlen;
+
+    // Guarded by leftLock
+    protected Block leftblock;
+    protected int leftindex;
+
+    // Guarded by rightLock
+    protected Block rightblock;
+    protected int rightindex;
+
+    public ConcurrentBlockDeque() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    public ConcurrentBlockDeque(Collection<? extends E> c) {
+        this(c, Integer.MAX_VALUE);
+    }
+
+    public ConcurrentBlockDeque(Collection<? extends E> c, int maxlen) {
+        Block b = new Block();
+
+        this.leftblock = b;
+        this.rightblock = b;
+        this.leftindex = CENTER + 1;
+        this.rightindex = CENTER;
+        this.maxlen = maxlen;
+        if (c != null) {
+            for (E item : c) {
+                this.addLast(item);
+            }
+        }
+    }
+
+    public int getMaxlen() {
+        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+    }
+
+    protected void fullyLock() {
+        this.leftLock.lock();
+        this.rightLock.lock();
+    }
+
+    protected void fullyUnlock() {
+        this.rightLock.unlock();
+        this.leftLock.unlock();
+    }
+
+    protected boolean reserve() {
+        int c;
+        do {
+            c = this.count.get();
+            if (c == 0) {
+                return false;
+            }
+        } while (!this.count.compareAndSet(c, c - 1));
+        return true;
+    }
+
+    // Must hold rightLock
+    protected void appendInternal(E item) {
+        if (this.rightindex == BLOCKLEN - 1) {
+            Block b = new Block();
+            b.leftlink = this.rightblock;
+            this.rightblock.rightlink = b;
+            this.rightblock = b;
+            this.rightindex = -1;
+        }
+        this.rightindex++;
+        this.rightblock.data[this.rightindex] = item;
+    }
+
+    // Must hold leftLock
+    protected void appendleftInternal(E item) {
+        if (this.leftindex == 0) {
+            Block b = new Block();
+            b.rightlink = this.leftblock;
+            this.leftblock.leftlink = b;
+            this.leftblock = b;
+            this.leftindex = BLOCKLEN;
+        }
+        this.leftindex--;
+        this.leftblock.data[this.leftindex] = item;
+    }
+
+    // Must hold leftLock and have reserved an item
+    protected E popleftInternal() {
+        Object item;
+        Block b;
+
+        do {
+            if (this.leftindex == BLOCKLEN) {
+                b = this.leftblock.rightlink;
+                b.leftlink = null;
+                this.leftblock = b;
+                this.leftindex = 0;
+            }
+            item = this.leftblock.data[this.leftindex];
+            this.leftblock.data[this.leftindex] = null;
+            this.leftindex++;
+        } while (item == REMOVED);
+        return (E)item;
+    }
+
+    // Must hold rightLock and have reserved an item
+    protected E popInternal() {
+        Object item;
+        Block b;
+
+        do {
+            if (this.rightindex < 0) {
+                b = this.rightblock.leftlink;
+                b.rightlink = null;
+                this.rightblock = b;
+                this.rightindex = BLOCKLEN - 1;
+            }
+            item = this.rightblock.data[this.rightindex];
+            this.rightblock.data[this.rightindex] = null;
+            this.rightindex--;
+        } while (item == REMOVED);
+        return (E)item;
+    }
+
+    protected void addBounded(E item, boolean last) {
+        fullyLock();
+        try {
+            if (this.maxlen == 0) {
+                return;
+            }
+            if (this.count.get() >= this.maxlen) {
+                this.count.decrementAndGet();
+                if (last) {
+                    popleftInternal();
+                } else {
+                    popInternal();
+                }
+            }
+            if (last) {
+                appendInternal(item);
+            } else {
+                appendleftInternal(item);
+            }
+            this.count.incrementAndGet();
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public void addLast(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (this.maxlen != Integer.MAX_VALUE) {
+            addBounded(e, true);
+            return;
+        }
+        this.rightLock.lock();
+        try {
+            appendInternal(e);
+            this.count.getAndIncrement();
+        } finally {
+            this.rightLock.unlock();
+        }
+    }
+
+    @Override
+    public void addFirst(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (this.maxlen != Integer.MAX_VALUE) {
+            addBounded(e, false);
+            return;
+        }
+        this.leftLock.lock();
+        try {
+            appendleftInternal(e);
+            this.count.getAndIncrement();
+        } finally {
+            this.leftLock.unlock();
+        }
+    }
+
+    @Override
+    public E pollFirst() {
+        this.leftLock.lock();
+        try {
+            if (!reserve()) {
+                return null;
+            }
+            return popleftInternal();
+        } finally {
+            this.leftLock.unlock();
+        }
+    }
+
+    @Override
+    public E pollLast() {
+        this.rightLock.lock();
+        try {
+            if (!reserve()) {
+                return null;
+            }
+            return popInternal();
+        } finally {
+            this.rightLock.unlock();
+        }
+    }
+
+    @Override
+    public E removeFirst() {
+        E item = pollFirst();
+        if (item == null) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        return item;
+    }
+
+    @Override
+    public E removeLast() {
+        E item = pollLast();
+        if (item == null) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        return item;
+    }
+
+    @Override
+    public E peekFirst() {
+        Block b;
+        int index;
+        Object item;
+
+        fullyLock();
+        try {
+            if (this.count.get() == 0) {
+                return null;
+            }
+            b = this.leftblock;
+            index = this.leftindex;
+            for (;;) {
+                if (index == BLOCKLEN) {
+                    b = b.rightlink;
+                    index = 0;
+                }
+                item = b.data[index];
+                if (item != REMOVED) {
+                    return (E)item;
+                }
+                index++;
+            }
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public E peekLast() {
+        Block b;
+        int index;
+        Object item;
+
+        fullyLock();
+        try {
+            if (this.count.get() == 0) {
+                return null;
+            }
+            b = this.rightblock;
+            index = this.rightindex;
+            for (;;) {
+                if (index < 0) {
+                    b = b.leftlink;
+                    index = BLOCKLEN - 1;
+                }
+                item = b.data[index];
+                if (item != REMOVED) {
+                    return (E)item;
+                }
+                index--;
+            }
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public E getFirst() {
+        E item = peekFirst();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return item;
+    }
+
+    @Override
+    public E getLast() {
+        E item = peekLast();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return item;
+    }
+
+    @Override
+    public boolean removeFirstOccurrence(Object o) {
+        Block b;
+        int index, n;
+        Object item;
+
+        if (o == null) {
+            return false;
+        }
+        fullyLock();
+        try {
+            b = this.leftblock;
+            index = this.leftindex;
+            n = this.count.get();
+            while (n > 0) {
+                if (index == BLOCKLEN) {
+                    b = b.rightlink;
+                    index = 0;
+                }
+                item = b.data[index];
+                if (item != REMOVED) {
+                    if (o.equals(item)) {
+                        b.data[index] = REMOVED;
+                        this.count.decrementAndGet();
+                        return true;
+                    }
+                    n--;
+                }
+                index++;
+            }
+            return false;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public boolean removeLastOccurrence(Object o) {
+        Block b;
+        int index, n;
+        Object item;
+
+        if (o == null) {
+            return false;
+        }
+        fullyLock();
+        try {
+            b = this.rightblock;
+            index = this.rightindex;
+            n = this.count.get();
+            while (n > 0) {
+                if (index < 0) {
+                    b = b.leftlink;
+                    index = BLOCKLEN - 1;
+                }
+                item = b.data[index];
+                if (item != REMOVED) {
+                    if (o.equals(item)) {
+                        b.data[index] = REMOVED;
+                        this.count.decrementAndGet();
+                        return true;
+                    }
+                    n--;
+                }
+                index--;
+            }
+            return false;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        fullyLock();
+        try {
+            while (reserve()) {
+                popleftInternal();
+            }
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.count.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.count.get() == 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new DequeIter();
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return new DequeRevIter();
+    }
+
+    /* Copies the live items of one block at a time under both locks, then
+       hands them out without holding any lock. Items are never moved, so
+       following the links from wherever the iterator stopped visits each
+       item that stayed in the deque exactly once, and remove() can find the
+       last one again in the slot it was copied from. */
+    protected class DequeIter implements Iterator<E> {
+        Block b;
+        int index;
+        Object[] buffer = new Object[BLOCKLEN];
+        int[] bufferindex = new int[BLOCKLEN];
+        Block bufferblock;
+        int bufferpos;
+        int bufferlen;
+        Object lastitem;
+        Block lastblock;
+        int lastindex;
+
+        DequeIter() {
+            leftLock.lock();
+            try {
+                this.b = leftblock;
+                this.index = leftindex;
+            } finally {
+                leftLock.unlock();
+            }
+        }
+
+        protected void fill() {
+            Object item;
+
+            this.bufferblock = this.b;
+            for (; this.index < BLOCKLEN; this.index++) {
+                item = this.b.data[this.index];
+                if (item != null && item != REMOVED) {
+                    this.bufferindex[this.bufferlen] = this.index;
+                    this.buffer[this.bufferlen++] = item;
+                }
+            }
+            this.b = this.b.rightlink;
+            this.index = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.bufferpos == this.bufferlen && this.b != null) {
+                this.bufferpos = 0;
+                this.bufferlen = 0;
+                fullyLock();
+                try {
+                    fill();
+                } finally {
+                    fullyUnlock();
+                }
+            }
+            return this.bufferpos < this.bufferlen;
+        }
+
+        @Override
+        public E next() {
+            E item;
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            item = (E)this.buffer[this.bufferpos];
+            this.lastitem = item;
+            this.lastblock = this.bufferblock;
+            this.lastindex = this.bufferindex[this.bufferpos];
+            this.buffer[this.bufferpos++] = null;
+            return item;
+        }
+
+        /* Marks the last item REMOVED, as removeFirstOccurrence() does, if
+           it is still in the deque */
+        @Override
+        public void remove() {
+            if (this.lastitem == null) {
+                throw new IllegalStateException();
+            }
+            fullyLock();
+            try {
+                if (this.lastblock.data[this.lastindex] == this.lastitem) {
+                    this.lastblock.data[this.lastindex] = REMOVED;
+                    count.decrementAndGet();
+                }
+            } finally {
+                fullyUnlock();
+            }
+            this.lastitem = null;
+            this.lastblock = null;
+        }
+    }
+
+    protected class DequeRevIter extends DequeIter {
+        DequeRevIter() {
+            rightLock.lock();
+            try {
+                this.b = rightblock;
+                this.index = rightindex;
+            } finally {
+                rightLock.unlock();
+            }
+        }
+
+        @Override
+        protected void fill() {
+            Object item;
+
+            this.bufferblock = this.b;
+            for (; this.index >= 0; this.index--) {
+                item = this.b.data[this.index];
+                if (item != null && item != REMOVED) {
+                    this.bufferindex[this.bufferlen] = this.index;
+                    this.buffer[this.bufferlen++] = item;
+                }
+            }
+            this.b = this.b.leftlink;
+            this.index = BLOCKLEN - 1;
+        }
+    }
+
+    // ****************************************************
+    // *      Remaining implementation of Deque<E>        *
+    // ****************************************************
+
+    @Override
+    public boolean add(E e) {
+        addLast(e);
+        return true;
+    }
+
+    @Override
+    public boolean offerFirst(E e) {
+        addFirst(e);
+        return true;
+    }
+
+    @Override
+    public boolean offerLast(E e) {
+        addLast(e);
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        addLast(e);
+        return true;
+    }
+
+    @Override
+    public E remove() {
+        return removeFirst();
+    }
+
+    @Override
+    public E poll() {
+        return pollFirst();
+    }
+
+    @Override
+    public E element() {
+        return getFirst();
+    }
+
+    @Override
+    public E peek() {
+        return peekFirst();
+    }
+
+    @Override
+    public void push(E e) {
+        addFirst(e);
+    }
+
+    @Override
+    public E pop() {
+        return removeFirst();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return removeFirstOccurrence(o);
+    }
+}
@@ -0,0 +1,745 @@
+package io.github.gaming32.stdpy;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.DoubleConsumer;
+
+/* A double-specialized version of BlockDeque.
+   The block layout and algorithms mirror BlockDeque exactly, but elements are
+   stored in double[] blocks so that they are never boxed.
+
+   IntBlockDeque, LongBlockDeque and DoubleBlockDeque are generated from
+   src/main/templates/PrimitiveBlockDeque.java.template by running
+   PrimitiveBlockDequeTemplateTest; edit the template rather than them.
+*/
+public class DoubleBlockDeque {
+    protected static final int BLOCKSHIFT = 6;
+    protected static final int BLOCKLEN = 1 << BLOCKSHIFT;
+    protected static final int BLOCKMASK = BLOCKLEN - 1;
+    protected static final int CENTER = ((BLOCKLEN - 1) / 2);
+    protected static final int MAXFREEBLOCKS = 16;
+    protected static final int MINBLOCKINDEX = 8;
+
+    protected static class Block {
+        protected Block leftlink;
+        protected double[] data = new double[BLOCKLEN];
+        protected Block rightlink;
+    }
+
+    protected Block leftblock;
+    protected Block rightblock;
+    protected int leftindex;
+    protected int rightindex;
+    protected long state;
+    protected int maxlen;
+    protected int numfreeblocks;
+    protected Block[] freeblocks = new Block[MAXFREEBLOCKS];
+
+    /* The blocks from leftblock to rightblock, in order, stored in a circular
+       array whose length is a power of two. This lets get() and set() find
+       the block holding any index without walking the links. */
+    protected Block[] blockindex = new Block[MINBLOCKINDEX];
+    protected int blockindexhead;
+    protected int numblocks;
+
+    protected int size;
+
+    protected Block newblock() {
+        Block b;
+        if (this.numfreeblocks > 0) {
+            this.numfreeblocks--;
+            return this.freeblocks[this.numfreeblocks];
+        }
+        b = new Block();
+        return b;
+    }
+
+    protected void freeblock(Block b) {
+        if (this.numfreeblocks < MAXFREEBLOCKS) {
+            this.freeblocks[this.numfreeblocks] = b;
+            this.numfreeblocks++;
+        }
+    }
+
+    protected void indexPushLeft(Block b) {
+        if (this.numblocks == this.blockindex.length) {
+            growBlockIndex();
+        }
+        this.blockindexhead = (this.blockindexhead - 1) & (this.blockindex.length - 1);
+        this.blockindex[this.blockindexhead] = b;
+        this.numblocks++;
+    }
+
+    protected void indexPushRight(Block b) {
+        if (this.numblocks == this.blockindex.length) {
+            growBlockIndex();
+        }
+        this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = b;
+        this.numblocks++;
+    }
+
+    protected void indexPopLeft() {
+        assert(this.numblocks > 1);
+        this.blockindex[this.blockindexhead] = null;
+        this.blockindexhead = (this.blockindexhead + 1) & (this.blockindex.length - 1);
+        this.numblocks--;
+    }
+
+    protected void indexPopRight() {
+        assert(this.numblocks > 1);
+        this.numblocks--;
+        this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = null;
+    }
+
+    protected void growBlockIndex() {
+        Block[] oldindex = this.blockindex;
+        Block[] newindex = new Block[oldindex.length << 1];
+        int head = this.blockindexhead;
+        int m = oldindex.length - head;
+
+        System.arraycopy(oldindex, head, newindex, 0, m);
+        System.arraycopy(oldindex, 0, newindex, m, head);
+        this.blockindex = newindex;
+        this.blockindexhead = 0;
+    }
+
+    /* The block holding offset i, counted from the start of leftblock */
+    protected Block blockAt(int i) {
+        return this.blockindex[(this.blockindexhead + (i >> BLOCKSHIFT)) & (this.blockindex.length - 1)];
+    }
+
+    public DoubleBlockDeque() {
+        Block b;
+
+        b = newblock();
+
+        this.size = 0;
+        this.leftblock = b;
+        this.rightblock = b;
+        this.leftindex = CENTER + 1;
+        this.rightindex = CENTER;
+        this.state = 0;
+        this.maxlen = Integer.MAX_VALUE;
+        this.numfreeblocks = 0;
+        this.blockindex[0] = b;
+        this.blockindexhead = 0;
+        this.numblocks = 1;
+    }
+
+    public DoubleBlockDeque(double[] a) {
+        this();
+        if (a != null) {
+            this.addAllLast(a);
+        }
+    }
+
+    public DoubleBlockDeque(double[] a, int maxlen) {
+        this();
+        this.maxlen = maxlen;
+        if (a != null) {
+            this.addAllLast(a);
+        }
+    }
+
+    public int getMaxlen() {
+        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public double removeLast() {
+        double item;
+        Block prevblock;
+
+        if (this.size == 0) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        item = this.rightblock.data[this.rightindex];
+        this.rightindex--;
+        this.size--;
+        this.state++;
+
+        if (this.rightindex < 0) {
+            if (this.size > 0) {
+                prevblock = this.rightblock.leftlink;
+                freeblock(this.rightblock);
+                this.rightblock = prevblock;
+                this.rightindex = BLOCKLEN - 1;
+                indexPopRight();
+            } else {
+                this.leftindex = CENTER + 1;
+                this.rightindex = CENTER;
+            }
+        }
+        return item;
+    }
+
+    public double removeFirst() {
+        double item;
+        Block prevblock;
+
+        if (this.size == 0) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        item = this.leftblock.data[this.leftindex];
+        this.leftindex++;
+        this.size--;
+        this.state++;
+
+        if (this.leftindex == BLOCKLEN) {
+            if (this.size > 0) {
+                prevblock = this.leftblock.rightlink;
+                freeblock(this.leftblock);
+                this.leftblock = prevblock;
+                this.leftindex = 0;
+                indexPopLeft();
+            } else {
+                this.leftindex = CENTER + 1;
+                this.rightindex = CENTER;
+            }
+        }
+        return item;
+    }
+
+    protected boolean needsTrim(int maxlen) {
+        return maxlen < this.size;
+    }
+
+    protected void appendInternal(double item, int maxlen) {
+        if (this.rightindex == BLOCKLEN - 1) {
+            Block b = newblock();
+            b.leftlink = this.rightblock;
+            this.rightblock.rightlink = b;
+            this.rightblock = b;
+            this.rightindex = -1;
+            indexPushRight(b);
+        }
+        this.size++;
+        this.rightindex++;
+        this.rightblock.data[this.rightindex] = item;
+        if (needsTrim(maxlen)) {
+            removeFirst();
+        } else {
+            this.state++;
+        }
+    }
+
+    public void addLast(double e) {
+        appendInternal(e, this.maxlen);
+    }
+
+    protected void appendleftInternal(double item, int maxlen) {
+        if (this.leftindex == 0) {
+            Block b = newblock();
+            b.rightlink = this.leftblock;
+            this.leftblock.leftlink = b;
+            this.leftblock = b;
+            this.leftindex = BLOCKLEN;
+            indexPushLeft(b);
+        }
+        this.size++;
+        this.leftindex--;
+        this.leftblock.data[this.leftindex] = item;
+        if (needsTrim(maxlen)) {
+            removeLast();
+        } else {
+            this.state++;
+        }
+    }
+
+    public void addFirst(double e) {
+        appendleftInternal(e, this.maxlen);
+    }
+
+    public boolean addAllLast(double[] a) {
+        int maxlen = this.maxlen;
+
+        if (maxlen == 0 || a.length == 0) {
+            return false;
+        }
+
+        if (this.size == 0) {
+            this.leftindex = 1;
+            this.rightindex = 0;
+        }
+
+        for (double item : a) {
+            appendInternal(item, maxlen);
+        }
+        return true;
+    }
+
+    public boolean addAllFirst(double[] a) {
+        int maxlen = this.maxlen;
+
+        if (maxlen == 0 || a.length == 0) {
+            return false;
+        }
+
+        if (this.size == 0) {
+            this.leftindex = BLOCKLEN - 1;
+            this.rightindex = BLOCKLEN - 2;
+        }
+
+        for (double item : a) {
+            appendleftInternal(item, maxlen);
+        }
+        return true;
+    }
+
+    public double getFirst() {
+        if (this.size == 0) {
+            throw new NoSuchElementException();
+        }
+        return this.leftblock.data[this.leftindex];
+    }
+
+    public double getLast() {
+        if (this.size == 0) {
+            throw new NoSuchElementException();
+        }
+        return this.rightblock.data[this.rightindex];
+    }
+
+    public void clear() {
+        Block b, prevblock;
+
+        if (this.size == 0) {
+            return;
+        }
+
+        b = this.leftblock;
+        while (b != this.rightblock) {
+            prevblock = b;
+            b = b.rightlink;
+            freeblock(prevblock);
+        }
+
+        while (this.numblocks > 0) {
+            this.numblocks--;
+            this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = null;
+        }
+        this.size = 0;
+        this.leftblock = b;
+        this.leftindex = CENTER + 1;
+        this.rightindex = CENTER;
+        this.blockindex[0] = b;
+        this.blockindexhead = 0;
+        this.numblocks = 1;
+        this.state++;
+    }
+
+    public void rotate(int n) {
+        Block b = null;
+        Block leftblock = this.leftblock;
+        Block rightblock = this.rightblock;
+        int leftindex = this.leftindex;
+        int rightindex = this.rightindex;
+        int len = this.size, halflen = len >> 1;
+
+        if (len <= 1) {
+            return;
+        }
+        if (n > halflen || n < -halflen) {
+            n %= len;
+            if (n > halflen) {
+                n -= len;
+            } else if (n < -halflen) {
+                n += len;
+            }
+        }
+        assert(len > 1);
+        assert(-halflen <= n && n <= halflen);
+
+        this.state++;
+        while (n > 0) {
+            if (leftindex == 0) {
+                if (b == null) {
+                    b = newblock();
+                }
+                b.rightlink = leftblock;
+                leftblock.leftlink = b;
+                leftblock = b;
+                leftindex = BLOCKLEN;
+                indexPushLeft(b);
+                b = null;
+            }
+            assert(leftindex > 0);
+            {
+                int m = n;
+
+                if (m > rightindex + 1) {
+                    m = rightindex + 1;
+                }
+                if (m > leftindex) {
+                    m = leftindex;
+                }
+                assert(m > 0 && m <= len);
+                rightindex -= m;
+                leftindex -= m;
+                n -= m;
+                System.arraycopy(rightblock.data, rightindex + 1, leftblock.data, leftindex, m);
+            }
+            if (rightindex < 0) {
+                assert(leftblock != rightblock);
+                assert(b == null);
+                b = rightblock;
+                rightblock = rightblock.leftlink;
+                rightindex = BLOCKLEN - 1;
+                indexPopRight();
+            }
+        }
+        while (n < 0) {
+            if (rightindex == BLOCKLEN - 1) {
+                if (b == null) {
+                    b = newblock();
+                }
+                b.leftlink = rightblock;
+                rightblock.rightlink = b;
+                rightblock = b;
+                rightindex = -1;
+                indexPushRight(b);
+                b = null;
+            }
+            assert(rightindex < BLOCKLEN - 1);
+            {
+                int m = -n;
+
+                if (m > BLOCKLEN - leftindex) {
+                    m = BLOCKLEN - leftindex;
+                }
+                if (m > BLOCKLEN - 1 - rightindex) {
+                    m = BLOCKLEN - 1 - rightindex;
+                }
+                assert(m > 0 && m <= len);
+                System.arraycopy(leftblock.data, leftindex, rightblock.data, rightindex + 1, m);
+                leftindex += m;
+                rightindex += m;
+                n += m;
+            }
+            if (leftindex == BLOCKLEN) {
+                assert(leftblock != rightblock);
+                assert(b == null);
+                b = leftblock;
+                leftblock = leftblock.rightlink;
+                leftindex = 0;
+                indexPopLeft();
+            }
+        }
+        if (b != null) {
+            freeblock(b);
+        }
+        this.leftblock = leftblock;
+        this.rightblock = rightblock;
+        this.leftindex = leftindex;
+        this.rightindex = rightindex;
+    }
+
+    public void rotate() {
+        rotate(1);
+    }
+
+    public void reverse() {
+        Block leftblock = this.leftblock;
+        Block rightblock = this.rightblock;
+        int leftindex = this.leftindex;
+        int rightindex = this.rightindex;
+        int n = this.size >> 1;
+        double tmp;
+
+        while (--n >= 0) {
+            assert(leftblock != rightblock || leftindex < rightindex);
+
+            tmp = leftblock.data[leftindex];
+            leftblock.data[leftindex] = rightblock.data[rightindex];
+            rightblock.data[rightindex] = tmp;
+
+            leftindex++;
+            if (leftindex == BLOCKLEN) {
+                leftblock = leftblock.rightlink;
+                leftindex = 0;
+            }
+
+            rightindex--;
+            if (rightindex < 0) {
+                rightblock = rightblock.leftlink;
+                rightindex = BLOCKLEN - 1;
+            }
+        }
+    }
+
+    protected static boolean eq(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    public int count(double v) {
+        Block b = this.leftblock;
+        int index = this.leftindex;
+        int n = this.size;
+        int count = 0;
+
+        while (--n >= 0) {
+            if (eq(b.data[index], v)) {
+                count++;
+            }
+            index++;
+            if (index == BLOCKLEN) {
+                b = b.rightlink;
+                index = 0;
+            }
+        }
+        return count;
+    }
+
+    public boolean contains(double v) {
+        return indexOf(v, 0, this.size) != -1;
+    }
+
+    public int indexOf(double v, int start, int stop) {
+        int n;
+        Block b;
+        int index;
+
+        if (stop > this.size) {
+            stop = this.size;
+        }
+        if (start < 0) {
+            start = 0;
+        }
+        if (start > stop) {
+            start = stop;
+        }
+        assert(0 <= start && start <= stop && stop <= this.size);
+
+        if (start == stop) {
+            return -1;
+        }
+        b = blockAt(start + this.leftindex);
+        index = (start + this.leftindex) & BLOCKMASK;
+
+        n = stop - start;
+        while (--n >= 0) {
+            if (eq(b.data[index], v)) {
+                return stop - n - 1;
+            }
+            index++;
+            if (index == BLOCKLEN) {
+                b = b.rightlink;
+                index = 0;
+            }
+        }
+        return -1;
+    }
+
+    public int indexOf(double v, int start) {
+        return indexOf(v, start, this.size);
+    }
+
+    public int indexOf(double v) {
+        return indexOf(v, 0, this.size);
+    }
+
+    protected boolean validIndex(int i, int limit) {
+        return 0 <= i && i < limit;
+    }
+
+    protected IndexOutOfBoundsException indexOutOfBounds(int i) {
+        return new IndexOutOfBoundsException("Index " + i + " out of bounds for deque of length " + this.size);
+    }
+
+    public double get(int i) {
+        if (!validIndex(i, this.size)) {
+            throw this.indexOutOfBounds(i);
+        }
+        if (i == 0) {
+            return this.leftblock.data[this.leftindex];
+        } else if (i == this.size - 1) {
+            return this.rightblock.data[this.rightindex];
+        }
+        i += this.leftindex;
+        return blockAt(i).data[i & BLOCKMASK];
+    }
+
+    public double set(int i, double v) {
+        double[] data;
+        double oldValue;
+        int index;
+
+        if (!validIndex(i, this.size)) {
+            throw this.indexOutOfBounds(i);
+        }
+        index = i + this.leftindex;
+        data = blockAt(index).data;
+        index &= BLOCKMASK;
+        oldValue = data[index];
+        data[index] = v;
+        return oldValue;
+    }
+
+    public void forEach(DoubleConsumer action) {
+        Block b;
+        int index;
+        int indexlo = this.leftindex;
+        int indexhigh;
+
+        if (this.size == 0) {
+            return;
+        }
+        for (b = this.leftblock; b != this.rightblock; b = b.rightlink) {
+            for (index = indexlo; index < BLOCKLEN; index++) {
+                action.accept(b.data[index]);
+            }
+            indexlo = 0;
+        }
+        indexhigh = this.rightindex;
+        for (index = indexlo; index <= indexhigh; index++) {
+            action.accept(b.data[index]);
+        }
+    }
+
+    public double[] toArray() {
+        double[] result = new double[this.size];
+        Block b = this.leftblock;
+        int index = this.leftindex;
+        int i = 0, m;
+
+        while (i < this.size) {
+            m = Math.min(BLOCKLEN - index, this.size - i);
+            System.arraycopy(b.data, index, result, i, m);
+            i += m;
+            b = b.rightlink;
+            index = 0;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DoubleBlockDeque)) {
+            return false;
+        }
+        DoubleBlockDeque w = (DoubleBlockDeque)o;
+        if (this.size != w.size) {
+            return false;
+        }
+        PrimitiveIterator.OfDouble it1 = this.iterator();
+        PrimitiveIterator.OfDouble it2 = w.iterator();
+        while (it1.hasNext()) {
+            if (!eq(it1.nextDouble(), it2.nextDouble())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        PrimitiveIterator.OfDouble it = this.iterator();
+        while (it.hasNext()) {
+            hashCode = 31 * hashCode + Double.hashCode(it.nextDouble());
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    public PrimitiveIterator.OfDouble iterator() {
+        return new DequeIter(this);
+    }
+
+    protected class DequeIter implements PrimitiveIterator.OfDouble {
+        Block b;
+        int index;
+        DoubleBlockDeque deque;
+        long state;
+        int counter;
+
+        private DequeIter() {
+        }
+
+        DequeIter(DoubleBlockDeque deque) {
+            this.b = deque.leftblock;
+            this.index = deque.leftindex;
+            this.deque = deque;
+            this.state = deque.state;
+            this.counter = deque.size;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.counter > 0;
+        }
+
+        @Override
+        public double nextDouble() {
+            double item;
+
+            if (this.deque.state != this.state) {
+                this.counter = 0;
+                throw new IllegalStateException("deque mutated during iteration");
+            }
+            if (this.counter == 0) {
+                throw new NoSuchElementException();
+            }
+
+            item = this.b.data[this.index];
+            this.index++;
+            this.counter--;
+            if (this.index == BLOCKLEN && this.counter > 0) {
+                this.b = this.b.rightlink;
+                this.index = 0;
+            }
+            return item;
+        }
+    }
+
+    public PrimitiveIterator.OfDouble descendingIterator() {
+        return new DequeRevIter(this);
+    }
+
+    protected class DequeRevIter extends DequeIter {
+        DequeRevIter(DoubleBlockDeque deque) {
+            this.b = deque.rightblock;
+            this.index = deque.rightindex;
+            this.deque = deque;
+            this.state = deque.state;
+            this.counter = deque.size;
+        }
+
+        @Override
+        public double nextDouble() {
+            double item;
+            if (this.counter == 0) {
+                throw new NoSuchElementException();
+            }
+
+            if (this.deque.state != this.state) {
+                this.counter = 0;
+                throw new IllegalStateException("deque mutated during iteration");
+            }
+
+            item = this.b.data[this.index];
+            this.index--;
+            this.counter--;
+            if (this.index < 0 && this.counter > 0) {
+                this.b = this.b.leftlink;
+                this.index = BLOCKLEN - 1;
+            }
+            return item;
+        }
+    }
+}
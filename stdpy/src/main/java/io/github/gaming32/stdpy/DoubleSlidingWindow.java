@@ -0,0 +1,203 @@
+package io.github.gaming32.stdpy;
+
+import java.util.NoSuchElementException;
+
+/* A double-specialized sliding window that keeps the sum, minimum and
+   maximum of its last maxlen values up to date in O(1) amortized time per
+   value. The minimum and maximum use monotonic deques, as in
+   LongSlidingWindow, and follow the order of Double.compare(), so NaN is
+   the greatest value and -0.0 is less than 0.0.
+
+   Subtracting evicted values from a plain running total would let rounding
+   errors pile up without end, so the finite values are summed with
+   Neumaier's compensated summation. Infinities and NaNs are counted
+   instead of summed, so the sum recovers once they leave the window.
+
+   Finite values can still add up to more than Double.MAX_VALUE. The first
+   time they do, the sum is worked out again from the window with every
+   value scaled down by 2^RESCALE, which leaves room for any number of
+   values, and it stays scaled until the window empties. getSum() is
+   infinite while the true sum is out of range, and finite again after.
+*/
+public class DoubleSlidingWindow {
+    protected final int maxlen;
+    protected final DoubleBlockDeque items = new DoubleBlockDeque();
+    protected final DoubleBlockDeque mins = new DoubleBlockDeque();
+    protected final DoubleBlockDeque maxes = new DoubleBlockDeque();
+    protected double sum;
+    protected double compensation;
+    protected int nans;
+    protected int positiveInfinities;
+    protected int negativeInfinities;
+
+    /* sum and compensation are the sum of the finite values times 2^-scale */
+    protected int scale;
+    protected static final int RESCALE = 64;
+
+    public DoubleSlidingWindow() {
+        this(-1);
+    }
+
+    /* A window that evicts its oldest value whenever adding a value would
+       make it longer than maxlen; a maxlen of -1 means it never evicts */
+    public DoubleSlidingWindow(int maxlen) {
+        if (maxlen < -1) {
+            throw new IllegalArgumentException("maxlen must be non-negative or -1");
+        }
+        this.maxlen = maxlen == -1 ? Integer.MAX_VALUE : maxlen;
+    }
+
+    public int getMaxlen() {
+        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+    }
+
+    public int size() {
+        return this.items.size();
+    }
+
+    public boolean isEmpty() {
+        return this.items.isEmpty();
+    }
+
+    protected void addToSum(double v, int sign) {
+        if (Double.isNaN(v)) {
+            this.nans += sign;
+        } else if (v == Double.POSITIVE_INFINITY) {
+            this.positiveInfinities += sign;
+        } else if (v == Double.NEGATIVE_INFINITY) {
+            this.negativeInfinities += sign;
+        } else if (!addScaled(Math.scalb(v * sign, -this.scale))) {
+            /* items already has v added or removed */
+            rescale();
+        }
+    }
+
+    /* Adds a finite value that is already scaled, unless that would
+       overflow */
+    protected boolean addScaled(double v) {
+        double t = this.sum + v;
+
+        if (Double.isInfinite(t)) {
+            return false;
+        }
+        if (Math.abs(this.sum) >= Math.abs(v)) {
+            this.compensation += (this.sum - t) + v;
+        } else {
+            this.compensation += (v - t) + this.sum;
+        }
+        this.sum = t;
+        return true;
+    }
+
+    protected void rescale() {
+        this.scale = RESCALE;
+        this.sum = 0;
+        this.compensation = 0;
+        this.items.forEach(v -> {
+            if (Double.isFinite(v)) {
+                addScaled(Math.scalb(v, -RESCALE));
+            }
+        });
+    }
+
+    /* Adds a value as the newest one, first evicting the oldest if the
+       window is full */
+    public void addLast(double v) {
+        if (this.maxlen == 0) {
+            return;
+        }
+        if (this.items.size() == this.maxlen) {
+            removeFirst();
+        }
+        this.items.addLast(v);
+        addToSum(v, 1);
+        while (!this.mins.isEmpty() && Double.compare(this.mins.getLast(), v) > 0) {
+            this.mins.removeLast();
+        }
+        this.mins.addLast(v);
+        while (!this.maxes.isEmpty() && Double.compare(this.maxes.getLast(), v) < 0) {
+            this.maxes.removeLast();
+        }
+        this.maxes.addLast(v);
+    }
+
+    /* Removes and returns the oldest value */
+    public double removeFirst() {
+        double v = this.items.removeFirst();
+
+        addToSum(v, -1);
+        if (this.items.isEmpty()) {
+            /* Drop any rounding error left over */
+            this.sum = 0;
+            this.compensation = 0;
+            this.scale = 0;
+        }
+        /* If it's still in either deque, it's at the front */
+        if (Double.compare(this.mins.getFirst(), v) == 0) {
+            this.mins.removeFirst();
+        }
+        if (Double.compare(this.maxes.getFirst(), v) == 0) {
+            this.maxes.removeFirst();
+        }
+        return v;
+    }
+
+    public double getSum() {
+        if (this.nans > 0 || (this.positiveInfinities > 0 && this.negativeInfinities > 0)) {
+            return Double.NaN;
+        }
+        if (this.positiveInfinities > 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (this.negativeInfinities > 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Math.scalb(this.sum + this.compensation, this.scale);
+    }
+
+    public double getAverage() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("empty window");
+        }
+        return getSum() / this.items.size();
+    }
+
+    public double getMin() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("empty window");
+        }
+        return this.mins.getFirst();
+    }
+
+    public double getMax() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("empty window");
+        }
+        return this.maxes.getFirst();
+    }
+
+    public double getFirst() {
+        return this.items.getFirst();
+    }
+
+    public double getLast() {
+        return this.items.getLast();
+    }
+
+    public void clear() {
+        this.items.clear();
+        this.mins.clear();
+        this.maxes.clear();
+        this.sum = 0;
+        this.compensation = 0;
+        this.scale = 0;
+        this.nans = 0;
+        this.positiveInfinities = 0;
+        this.negativeInfinities = 0;
+    }
+
+    @Override
+    public String toString() {
+        return this.items.toString();
+    }
+}
@@ -0,0 +1,697 @@
+package io.github.gaming32.stdpy;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/* A deque of byte arrays that survives restarts and crashes. Items are kept
+   in memory in a BlockDeque and persisted in a directory as:
+
+     - segment files, one per group of SEGMENTLEN positions (a group of
+       blocks), written only at checkpoints and only for groups that changed;
+     - an append-only journal of addFirst/addLast/removeFirst/removeLast and
+       clear operations since the last checkpoint;
+     - a manifest naming the live position range, the segment file of each
+       group in it and the current journal, replaced atomically to commit a
+       checkpoint.
+
+   Every item has an absolute position that never changes while it is in the
+   deque: addLast uses the position after the right end and addFirst the one
+   before the left end. That is what lets a checkpoint rewrite only the
+   groups that actually changed. Recovery loads the segments the manifest
+   names and replays only the journal written since, stopping at the first
+   torn or corrupt record.
+
+   Operations are journaled to memory and reach the disk in batches: sync()
+   writes and fsyncs everything journaled so far, and concurrent callers of
+   sync() share one fsync (group commit). With a sync interval of n, every
+   nth operation syncs by itself; with 0 only sync(), checkpoint() and
+   close() do. The journal is checkpointed once it grows past a size limit.
+*/
+public class DurableBlockDeque implements Closeable {
+    protected static final int SEGMENTSHIFT = 12;
+    protected static final long SEGMENTLEN = 1L << SEGMENTSHIFT;
+    protected static final int MANIFESTMAGIC = 0x53445131; // SDQ1
+    protected static final int SEGMENTMAGIC = 0x53445153; // SDQS
+    protected static final long DEFAULTCHECKPOINTBYTES = 64L << 20;
+
+    protected static final byte OP_ADDFIRST = 1;
+    protected static final byte OP_ADDLAST = 2;
+    protected static final byte OP_REMOVEFIRST = 3;
+    protected static final byte OP_REMOVELAST = 4;
+    protected static final byte OP_CLEAR = 5;
+
+    protected final Path dir;
+    protected final int syncinterval;
+    protected final long checkpointbytes;
+
+    protected final BlockDeque<byte[]> items = new BlockDeque<>();
+    /* The position of items.getFirst(); the last item is at leftpos + size - 1 */
+    protected long leftpos;
+    protected long generation;
+    /* The generation of the segment file holding each live group */
+    protected final Map<Long, Long> segments = new HashMap<>();
+    protected final Set<Long> dirty = new HashSet<>();
+    protected long lastdirty = Long.MIN_VALUE;
+
+    protected FileChannel journal;
+    protected long journalsize;
+    protected ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    protected DataOutputStream pendingout = new DataOutputStream(this.pending);
+    protected final CRC32 crc = new CRC32();
+    /* Operations journaled and operations known to be on disk */
+    protected long opcount;
+    protected long syncedcount;
+    protected final Object synclock = new Object();
+    protected boolean closed;
+    /* Set when a failed journal write couldn't be cut back off the journal */
+    protected IOException failure;
+
+    public DurableBlockDeque(Path dir) throws IOException {
+        this(dir, 0, DEFAULTCHECKPOINTBYTES);
+    }
+
+    public DurableBlockDeque(Path dir, int syncinterval, long checkpointbytes) throws IOException {
+        if (syncinterval < 0) {
+            throw new IllegalArgumentException("negative sync interval " + syncinterval);
+        }
+        this.dir = dir;
+        this.syncinterval = syncinterval;
+        this.checkpointbytes = checkpointbytes;
+        Files.createDirectories(dir);
+        recover();
+    }
+
+    protected Path manifestPath() {
+        return this.dir.resolve("manifest");
+    }
+
+    protected Path journalPath(long generation) {
+        return this.dir.resolve("journal-" + generation);
+    }
+
+    protected Path segmentPath(long group, long generation) {
+        return this.dir.resolve("segment-" + group + "-" + generation);
+    }
+
+    protected static long groupOf(long pos) {
+        return pos >> SEGMENTSHIFT;
+    }
+
+    // ***********************
+    // * In-memory operations *
+    // ***********************
+
+    protected void markDirty(long pos) {
+        long group = groupOf(pos);
+        if (group != this.lastdirty) {
+            this.dirty.add(group);
+            this.lastdirty = group;
+        }
+    }
+
+    protected void apply(byte op, byte[] item) {
+        switch (op) {
+            case OP_ADDFIRST:
+                this.leftpos--;
+                markDirty(this.leftpos);
+                this.items.addFirst(item);
+                break;
+            case OP_ADDLAST:
+                markDirty(this.leftpos + this.items.size());
+                this.items.addLast(item);
+                break;
+            case OP_REMOVEFIRST:
+                markDirty(this.leftpos);
+                this.items.removeFirst();
+                this.leftpos++;
+                break;
+            case OP_REMOVELAST:
+                markDirty(this.leftpos + this.items.size() - 1);
+                this.items.removeLast();
+                break;
+            case OP_CLEAR:
+                /* Groups outside the live range are dropped at the next
+                   checkpoint, so nothing needs to be marked */
+                this.leftpos += this.items.size();
+                this.items.clear();
+                break;
+            default:
+                throw new IllegalArgumentException("unknown journal operation " + op);
+        }
+    }
+
+    protected void log(byte op, byte[] item) {
+        checkOpen();
+        this.crc.reset();
+        this.crc.update(op);
+        if (item != null) {
+            this.crc.update(item, 0, item.length);
+        }
+        try {
+            this.pendingout.writeInt(1 + (item != null ? item.length : 0));
+            this.pendingout.writeInt((int)this.crc.getValue());
+            this.pendingout.writeByte(op);
+            if (item != null) {
+                this.pendingout.write(item);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.opcount++;
+    }
+
+    protected void autoSync() {
+        if (this.syncinterval == 0) {
+            return;
+        }
+        synchronized (this) {
+            if (this.opcount - this.syncedcount < this.syncinterval) {
+                return;
+            }
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("deque is closed");
+        }
+        if (this.failure != null) {
+            throw new IllegalStateException("journal write failed", this.failure);
+        }
+    }
+
+    // ******************
+    // * Public methods *
+    // ******************
+
+    public void addFirst(byte[] item) {
+        synchronized (this) {
+            checkOpen();
+            item = Objects.requireNonNull(item).clone();
+            log(OP_ADDFIRST, item);
+            apply(OP_ADDFIRST, item);
+        }
+        autoSync();
+    }
+
+    public void addLast(byte[] item) {
+        synchronized (this) {
+            checkOpen();
+            item = Objects.requireNonNull(item).clone();
+            log(OP_ADDLAST, item);
+            apply(OP_ADDLAST, item);
+        }
+        autoSync();
+    }
+
+    public byte[] pollFirst() {
+        byte[] item;
+        synchronized (this) {
+            checkOpen();
+            if (this.items.isEmpty()) {
+                return null;
+            }
+            item = this.items.getFirst();
+            log(OP_REMOVEFIRST, null);
+            apply(OP_REMOVEFIRST, null);
+        }
+        autoSync();
+        return item;
+    }
+
+    public byte[] pollLast() {
+        byte[] item;
+        synchronized (this) {
+            checkOpen();
+            if (this.items.isEmpty()) {
+                return null;
+            }
+            item = this.items.getLast();
+            log(OP_REMOVELAST, null);
+            apply(OP_REMOVELAST, null);
+        }
+        autoSync();
+        return item;
+    }
+
+    public byte[] removeFirst() {
+        byte[] item = pollFirst();
+        if (item == null) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        return item;
+    }
+
+    public byte[] removeLast() {
+        byte[] item = pollLast();
+        if (item == null) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        return item;
+    }
+
+    public synchronized byte[] peekFirst() {
+        checkOpen();
+        return this.items.isEmpty() ? null : this.items.getFirst().clone();
+    }
+
+    public synchronized byte[] peekLast() {
+        checkOpen();
+        return this.items.isEmpty() ? null : this.items.getLast().clone();
+    }
+
+    public synchronized byte[] get(int index) {
+        checkOpen();
+        return this.items.get(index).clone();
+    }
+
+    public synchronized int size() {
+        return this.items.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.items.isEmpty();
+    }
+
+    public void clear() {
+        synchronized (this) {
+            log(OP_CLEAR, null);
+            apply(OP_CLEAR, null);
+        }
+        autoSync();
+    }
+
+    /**
+     * Makes every operation so far durable. If another thread is already
+     * syncing, waits for it and only syncs again if that didn't cover this
+     * thread's operations.
+     */
+    public void sync() throws IOException {
+        byte[] batch;
+        long upto;
+
+        synchronized (this) {
+            checkOpen();
+            upto = this.opcount;
+            if (this.syncedcount >= upto) {
+                return;
+            }
+        }
+        synchronized (this.synclock) {
+            synchronized (this) {
+                if (this.syncedcount >= upto) {
+                    return;
+                }
+                checkOpen();
+                upto = this.opcount;
+                batch = this.pending.toByteArray();
+            }
+            /* The batch stays pending until it is on disk, so that a failed
+               write is retried by the next sync() instead of leaving a gap
+               in the journal */
+            try {
+                writeFully(this.journal, ByteBuffer.wrap(batch));
+                this.journal.force(false);
+            } catch (IOException e) {
+                discardPartialWrite(e);
+                throw e;
+            }
+            synchronized (this) {
+                dropPending(batch.length);
+                this.journalsize += batch.length;
+                this.syncedcount = upto;
+            }
+            if (this.journalsize >= this.checkpointbytes) {
+                checkpoint();
+            }
+        }
+    }
+
+    /* Cuts a failed write back off the journal, so that the retry doesn't
+       follow a partial record. If even that fails, the journal can't be
+       trusted and the deque refuses any further operations. */
+    protected void discardPartialWrite(IOException cause) {
+        try {
+            this.journal.truncate(this.journalsize);
+            this.journal.position(this.journalsize);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            synchronized (this) {
+                this.failure = cause;
+            }
+        }
+    }
+
+    /* Drops the first n bytes of pending, which have been synced */
+    protected void dropPending(int n) {
+        byte[] rest = this.pending.toByteArray();
+        this.pending.reset();
+        this.pending.write(rest, n, rest.length - n);
+    }
+
+    /**
+     * Writes the groups that changed since the last checkpoint to new
+     * segment files, commits them with a new manifest and starts an empty
+     * journal, so that recovery has nothing to replay.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (this.synclock) {
+            synchronized (this) {
+                checkOpen();
+                checkpointLocked();
+            }
+        }
+    }
+
+    protected void checkpointLocked() throws IOException {
+        long newgen = this.generation + 1;
+        long first = groupOf(this.leftpos);
+        long last = groupOf(this.leftpos + this.items.size() - 1);
+        FileChannel newjournal;
+
+        for (Long group : this.dirty) {
+            if (!this.items.isEmpty() && first <= group && group <= last) {
+                writeSegment(group, newgen);
+                this.segments.put(group, newgen);
+            }
+        }
+        this.segments.keySet().removeIf(group -> this.items.isEmpty() || group < first || group > last);
+
+        newjournal = FileChannel.open(
+            journalPath(newgen),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        );
+        try {
+            writeManifest(newgen);
+        } catch (IOException e) {
+            newjournal.close();
+            throw e;
+        }
+
+        /* Committed: everything so far is in the segments */
+        this.journal.close();
+        this.journal = newjournal;
+        this.journalsize = 0;
+        this.pending.reset();
+        this.syncedcount = this.opcount;
+        this.generation = newgen;
+        this.dirty.clear();
+        this.lastdirty = Long.MIN_VALUE;
+        removeUnusedFiles();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this.synclock) {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                if (this.failure != null) {
+                    /* What is on disk is all there is to recover */
+                    this.closed = true;
+                    this.journal.close();
+                    return;
+                }
+                try {
+                    checkpointLocked();
+                } finally {
+                    this.closed = true;
+                    this.journal.close();
+                }
+            }
+        }
+    }
+
+    // ****************
+    // * File formats *
+    // ****************
+
+    protected static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /* Writes data to a temporary file, forces it to disk and renames it over
+       target, so target is either entirely old or entirely new. */
+    protected void replaceFile(Path target, byte[] data) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            writeFully(channel, ByteBuffer.wrap(data));
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    protected void syncDirectory() throws IOException {
+        FileChannel channel;
+
+        /* Makes renames durable where directories can be opened (not on
+           Windows, where opening one is denied and renames are durable
+           anyway) */
+        try {
+            channel = FileChannel.open(this.dir, StandardOpenOption.READ);
+        } catch (AccessDeniedException e) {
+            return;
+        }
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    protected byte[] withChecksum(ByteArrayOutputStream bytes) {
+        CRC32 crc = new CRC32();
+        byte[] data = bytes.toByteArray();
+        int n = data.length;
+
+        crc.update(data, 0, n);
+        data = Arrays.copyOf(data, n + 4);
+        ByteBuffer.wrap(data, n, 4).putInt((int)crc.getValue());
+        return data;
+    }
+
+    /* Reads a whole file, checking and stripping its checksum */
+    protected DataInputStream readChecked(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        CRC32 crc = new CRC32();
+
+        if (data.length < 4) {
+            throw new IOException(file + " is truncated");
+        }
+        crc.update(data, 0, data.length - 4);
+        if (ByteBuffer.wrap(data, data.length - 4, 4).getInt() != (int)crc.getValue()) {
+            throw new IOException(file + " is corrupt");
+        }
+        return new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+    }
+
+    protected void writeSegment(long group, long gen) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        long from = Math.max(group << SEGMENTSHIFT, this.leftpos);
+        long to = Math.min((group + 1) << SEGMENTSHIFT, this.leftpos + this.items.size());
+        byte[] item;
+
+        out.writeInt(SEGMENTMAGIC);
+        out.writeLong(from);
+        out.writeInt((int)(to - from));
+        for (long pos = from; pos < to; pos++) {
+            item = this.items.get((int)(pos - this.leftpos));
+            out.writeInt(item.length);
+            out.write(item);
+        }
+        replaceFile(segmentPath(group, gen), withChecksum(bytes));
+    }
+
+    protected void readSegment(long group, long gen, long from, long to) throws IOException {
+        Path file = segmentPath(group, gen);
+        DataInputStream in = readChecked(file);
+        byte[] item;
+        int n;
+
+        if (in.readInt() != SEGMENTMAGIC || in.readLong() != from || (n = in.readInt()) != to - from) {
+            throw new IOException(file + " doesn't match the manifest");
+        }
+        while (n-- > 0) {
+            item = new byte[in.readInt()];
+            in.readFully(item);
+            this.items.addLast(item);
+        }
+    }
+
+    protected void writeManifest(long gen) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MANIFESTMAGIC);
+        out.writeLong(gen);
+        out.writeLong(this.leftpos);
+        out.writeInt(this.items.size());
+        out.writeInt(this.segments.size());
+        for (Map.Entry<Long, Long> entry : this.segments.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        replaceFile(manifestPath(), withChecksum(bytes));
+    }
+
+    // ************
+    // * Recovery *
+    // ************
+
+    protected void recover() throws IOException {
+        long first, size, goodsize;
+
+        try {
+            DataInputStream in = readChecked(manifestPath());
+            int n;
+
+            if (in.readInt() != MANIFESTMAGIC) {
+                throw new IOException(manifestPath() + " is not a deque manifest");
+            }
+            this.generation = in.readLong();
+            this.leftpos = in.readLong();
+            size = in.readInt();
+            n = in.readInt();
+            while (n-- > 0) {
+                this.segments.put(in.readLong(), in.readLong());
+            }
+        } catch (NoSuchFileException e) {
+            this.generation = 0;
+            this.leftpos = 0;
+            size = 0;
+        }
+
+        first = groupOf(this.leftpos);
+        for (long group = first; size > 0 && group <= groupOf(this.leftpos + size - 1); group++) {
+            Long gen = this.segments.get(group);
+            if (gen == null) {
+                throw new IOException("manifest has no segment for group " + group);
+            }
+            readSegment(
+                group, gen,
+                Math.max(group << SEGMENTSHIFT, this.leftpos),
+                Math.min((group + 1) << SEGMENTSHIFT, this.leftpos + size)
+            );
+        }
+
+        goodsize = replayJournal();
+        this.journal = FileChannel.open(
+            journalPath(this.generation),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE
+        );
+        /* Cut off a torn or corrupt tail so new records follow good ones */
+        this.journal.truncate(goodsize);
+        this.journal.position(goodsize);
+        this.journalsize = goodsize;
+        removeUnusedFiles();
+    }
+
+    /* Applies the journal's records, returning the length of its good part */
+    protected long replayJournal() throws IOException {
+        long good = 0, filesize;
+        CRC32 crc = new CRC32();
+        int length, checksum;
+        byte[] record;
+
+        try (InputStream stream = Files.newInputStream(journalPath(this.generation))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            filesize = Files.size(journalPath(this.generation));
+            for (;;) {
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    /* A torn or corrupt header can claim any length */
+                    if (length < 1 || length > filesize - good - 8) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int)crc.getValue() != checksum) {
+                    break;
+                }
+                if (record[0] == OP_ADDFIRST || record[0] == OP_ADDLAST) {
+                    apply(record[0], Arrays.copyOfRange(record, 1, length));
+                } else if ((record[0] == OP_REMOVEFIRST || record[0] == OP_REMOVELAST) && this.items.isEmpty()) {
+                    break;
+                } else {
+                    apply(record[0], null);
+                }
+                good += 8 + length;
+            }
+        } catch (NoSuchFileException e) {
+        }
+        return good;
+    }
+
+    /* Deletes segments and journals the manifest doesn't refer to, and
+       temporary files left by a crash. */
+    protected void removeUnusedFiles() throws IOException {
+        Set<Path> keep = new HashSet<>();
+
+        keep.add(manifestPath().getFileName());
+        keep.add(journalPath(this.generation).getFileName());
+        for (Map.Entry<Long, Long> entry : this.segments.entrySet()) {
+            keep.add(segmentPath(entry.getKey(), entry.getValue()).getFileName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (keep.contains(file.getFileName())) {
+                    continue;
+                }
+                if (name.startsWith("segment-") || name.startsWith("journal-") || name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+}
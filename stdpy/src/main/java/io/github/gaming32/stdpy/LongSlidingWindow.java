@@ -0,0 +1,128 @@
+package io.github.gaming32.stdpy;
+
+import java.util.NoSuchElementException;
+
+/* A long-specialized sliding window that keeps the sum, minimum and maximum
+   of its last maxlen values up to date in O(1) amortized time per value.
+
+   The sum is kept as a running total. The minimum and maximum use monotonic
+   deques: mins holds the values that are smaller than everything added
+   after them, in increasing order, so its first value is the minimum, and
+   a new value first drops every value it makes redundant from the end.
+   maxes is the same the other way around. Each value enters and leaves
+   each deque at most once. Like long arithmetic, the sum wraps around on
+   overflow, but it is exact again once the true sum fits.
+*/
+public class LongSlidingWindow {
+    protected final int maxlen;
+    protected final LongBlockDeque items = new LongBlockDeque();
+    protected final LongBlockDeque mins = new LongBlockDeque();
+    protected final LongBlockDeque maxes = new LongBlockDeque();
+    protected long sum;
+
+    public LongSlidingWindow() {
+        this(-1);
+    }
+
+    /* A window that evicts its oldest value whenever adding a value would
+       make it longer than maxlen; a maxlen of -1 means it never evicts */
+    public LongSlidingWindow(int maxlen) {
+        if (maxlen < -1) {
+            throw new IllegalArgumentException("maxlen must be non-negative or -1");
+        }
+        this.maxlen = maxlen == -1 ? Integer.MAX_VALUE : maxlen;
+    }
+
+    public int getMaxlen() {
+        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+    }
+
+    public int size() {
+        return this.items.size();
+    }
+
+    public boolean isEmpty() {
+        return this.items.isEmpty();
+    }
+
+    /* Adds a value as the newest one, first evicting the oldest if the
+       window is full */
+    public void addLast(long v) {
+        if (this.maxlen == 0) {
+            return;
+        }
+        if (this.items.size() == this.maxlen) {
+            removeFirst();
+        }
+        this.items.addLast(v);
+        this.sum += v;
+        while (!this.mins.isEmpty() && this.mins.getLast() > v) {
+            this.mins.removeLast();
+        }
+        this.mins.addLast(v);
+        while (!this.maxes.isEmpty() && this.maxes.getLast() < v) {
+            this.maxes.removeLast();
+        }
+        this.maxes.addLast(v);
+    }
+
+    /* Removes and returns the oldest value */
+    public long removeFirst() {
+        long v = this.items.removeFirst();
+
+        this.sum -= v;
+        /* If it's still in either deque, it's at the front */
+        if (this.mins.getFirst() == v) {
+            this.mins.removeFirst();
+        }
+        if (this.maxes.getFirst() == v) {
+            this.maxes.removeFirst();
+        }
+        return v;
+    }
+
+    public long getSum() {
+        return this.sum;
+    }
+
+    public double getAverage() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("empty window");
+        }
+        return (double)this.sum / this.items.size();
+    }
+
+    public long getMin() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("empty window");
+        }
+        return this.mins.getFirst();
+    }
+
+    public long getMax() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("empty window");
+        }
+        return this.maxes.getFirst();
+    }
+
+    public long getFirst() {
+        return this.items.getFirst();
+    }
+
+    public long getLast() {
+        return this.items.getLast();
+    }
+
+    public void clear() {
+        this.items.clear();
+        this.mins.clear();
+        this.maxes.clear();
+        this.sum = 0;
+    }
+
+    @Override
+    public String toString() {
+        return this.items.toString();
+    }
+}
@@ -0,0 +1,663 @@
+package io.github.gaming32.stdpy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+/* A deque of fixed-size binary records, laid out like BlockDeque but with
+   each block's records packed into one ByteBuffer outside the Java heap.
+   Records are copied in and out of caller-supplied buffers or arrays, so no
+   object is ever created per record.
+
+   Blocks are direct buffers by default. Given a file, blocks are instead
+   memory-mapped regions of it ("slots"), so the deque can grow well past
+   the heap and even physical memory, with the OS paging blocks in and out.
+   The file is only scratch space: it is truncated when the deque is opened,
+   and its contents mean nothing once the deque is closed.
+*/
+public class RecordBlockDeque implements Closeable {
+    /* The default number of bytes per block, for picking a block length */
+    protected static final int BLOCKBYTES = 1 << 16;
+    protected static final int MAXFREEBLOCKS = 16;
+    protected static final int MINBLOCKINDEX = 8;
+
+    protected static class Block {
+        protected Block leftlink;
+        protected ByteBuffer data;
+        protected Block rightlink;
+        /* The block's position in the file, in blocks, or -1 if not mapped */
+        protected int slot;
+    }
+
+    protected final int recordsize;
+    protected final int blocklen;
+    protected final int blockshift;
+    protected final int blockmask;
+    protected final int center;
+
+    protected Block leftblock;
+    protected Block rightblock;
+    protected int leftindex;
+    protected int rightindex;
+    protected long state;
+    protected int size;
+    protected int numfreeblocks;
+    protected Block[] freeblocks = new Block[MAXFREEBLOCKS];
+
+    protected Block[] blockindex = new Block[MINBLOCKINDEX];
+    protected int blockindexhead;
+    protected int numblocks;
+
+    protected FileChannel channel;
+    /* Slots whose blocks were dropped, to be mapped again before the file
+       grows, and the number of slots the file has grown to. */
+    protected IntBlockDeque freeslots;
+    protected int numslots;
+    protected boolean closed;
+
+    public RecordBlockDeque(int recordsize) {
+        this(recordsize, defaultBlockLength(recordsize));
+    }
+
+    /* blocklen is the number of records per block, a power of two of at
+       least 2. */
+    public RecordBlockDeque(int recordsize, int blocklen) {
+        this(recordsize, blocklen, (FileChannel)null);
+    }
+
+    /* Keeps the blocks in the given file, which is created if needed and
+       truncated. */
+    public RecordBlockDeque(int recordsize, Path file) throws IOException {
+        this(recordsize, defaultBlockLength(recordsize), file);
+    }
+
+    public RecordBlockDeque(int recordsize, int blocklen, Path file) throws IOException {
+        this(recordsize, blocklen, openChannel(recordsize, blocklen, file));
+    }
+
+    protected RecordBlockDeque(int recordsize, int blocklen, FileChannel channel) {
+        checkSizes(recordsize, blocklen);
+        this.recordsize = recordsize;
+        this.blocklen = blocklen;
+        this.blockshift = Integer.numberOfTrailingZeros(blocklen);
+        this.blockmask = blocklen - 1;
+        this.center = (blocklen - 1) / 2;
+        this.channel = channel;
+        if (channel != null) {
+            this.freeslots = new IntBlockDeque();
+        }
+        try {
+            initBlocks();
+        } catch (RuntimeException | Error e) {
+            /* Nothing else will ever close the channel */
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+    }
+
+    protected static void checkSizes(int recordsize, int blocklen) {
+        if (recordsize <= 0) {
+            throw new IllegalArgumentException("record size must be positive: " + recordsize);
+        }
+        if (blocklen < 2 || (blocklen & (blocklen - 1)) != 0) {
+            throw new IllegalArgumentException("block length must be a power of two of at least 2: " + blocklen);
+        }
+        if ((long)recordsize * blocklen > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("blocks of " + blocklen + " records of " + recordsize + " bytes are too large");
+        }
+    }
+
+    protected static FileChannel openChannel(int recordsize, int blocklen, Path file) throws IOException {
+        checkSizes(recordsize, blocklen);
+        return FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        );
+    }
+
+    protected static int defaultBlockLength(int recordsize) {
+        int n = recordsize > 0 ? BLOCKBYTES / recordsize : 0;
+        return n < 2 ? 2 : Integer.highestOneBit(n);
+    }
+
+    protected void initBlocks() {
+        Block b = newblock();
+
+        this.size = 0;
+        this.leftblock = b;
+        this.rightblock = b;
+        this.leftindex = this.center + 1;
+        this.rightindex = this.center;
+        this.blockindex[0] = b;
+        this.blockindexhead = 0;
+        this.numblocks = 1;
+    }
+
+    protected ByteBuffer mapslot(int slot) {
+        int blockbytes = this.recordsize * this.blocklen;
+
+        try {
+            return this.channel.map(FileChannel.MapMode.READ_WRITE, (long)slot * blockbytes, blockbytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected Block newblock() {
+        Block b;
+
+        if (this.numfreeblocks > 0) {
+            this.numfreeblocks--;
+            b = this.freeblocks[this.numfreeblocks];
+            this.freeblocks[this.numfreeblocks] = null;
+            return b;
+        }
+        b = new Block();
+        if (this.channel == null) {
+            b.data = ByteBuffer.allocateDirect(this.recordsize * this.blocklen);
+            b.slot = -1;
+        } else {
+            b.slot = this.freeslots.size() > 0 ? this.freeslots.removeLast() : this.numslots++;
+            b.data = mapslot(b.slot);
+        }
+        return b;
+    }
+
+    protected void freeblock(Block b) {
+        b.leftlink = null;
+        b.rightlink = null;
+        if (this.numfreeblocks < MAXFREEBLOCKS) {
+            this.freeblocks[this.numfreeblocks] = b;
+            this.numfreeblocks++;
+        } else if (b.slot >= 0) {
+            /* Drop the mapping but keep the slot for the next block */
+            this.freeslots.addLast(b.slot);
+        }
+    }
+
+    protected void indexPushLeft(Block b) {
+        if (this.numblocks == this.blockindex.length) {
+            growBlockIndex();
+        }
+        this.blockindexhead = (this.blockindexhead - 1) & (this.blockindex.length - 1);
+        this.blockindex[this.blockindexhead] = b;
+        this.numblocks++;
+    }
+
+    protected void indexPushRight(Block b) {
+        if (this.numblocks == this.blockindex.length) {
+            growBlockIndex();
+        }
+        this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = b;
+        this.numblocks++;
+    }
+
+    protected void indexPopLeft() {
+        assert(this.numblocks > 1);
+        this.blockindex[this.blockindexhead] = null;
+        this.blockindexhead = (this.blockindexhead + 1) & (this.blockindex.length - 1);
+        this.numblocks--;
+    }
+
+    protected void indexPopRight() {
+        assert(this.numblocks > 1);
+        this.numblocks--;
+        this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = null;
+    }
+
+    protected void growBlockIndex() {
+        Block[] oldindex = this.blockindex;
+        Block[] newindex = new Block[oldindex.length << 1];
+        int head = this.blockindexhead;
+        int m = oldindex.length - head;
+
+        System.arraycopy(oldindex, head, newindex, 0, m);
+        System.arraycopy(oldindex, 0, newindex, m, head);
+        this.blockindex = newindex;
+        this.blockindexhead = 0;
+    }
+
+    protected Block blockAt(int i) {
+        return this.blockindex[(this.blockindexhead + (i >> this.blockshift)) & (this.blockindex.length - 1)];
+    }
+
+    protected void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("deque is closed");
+        }
+    }
+
+    protected void checkRoom(ByteBuffer buffer) {
+        if (buffer.remaining() < this.recordsize) {
+            throw new IllegalArgumentException(
+                "buffer has " + buffer.remaining() + " bytes left, record size is " + this.recordsize
+            );
+        }
+    }
+
+    protected void checkRoom(byte[] a, int off) {
+        if (off < 0 || off > a.length - this.recordsize) {
+            throw new IndexOutOfBoundsException("no room for a record at offset " + off + " of an array of length " + a.length);
+        }
+    }
+
+    /* Copies record index of b to dest, advancing its position */
+    protected void read(Block b, int index, ByteBuffer dest) {
+        ByteBuffer data = b.data;
+        int pos = index * this.recordsize;
+
+        ((Buffer)data).limit(pos + this.recordsize).position(pos);
+        try {
+            dest.put(data);
+        } finally {
+            ((Buffer)data).limit(data.capacity());
+        }
+    }
+
+    /* Copies the next record of src into record index of b, advancing src */
+    protected void write(Block b, int index, ByteBuffer src) {
+        int limit = src.limit();
+
+        ((Buffer)src).limit(src.position() + this.recordsize);
+        ((Buffer)b.data).position(index * this.recordsize);
+        try {
+            b.data.put(src);
+        } finally {
+            ((Buffer)src).limit(limit);
+        }
+    }
+
+    protected void read(Block b, int index, byte[] dest, int off) {
+        ((Buffer)b.data).position(index * this.recordsize);
+        b.data.get(dest, off, this.recordsize);
+    }
+
+    protected void write(Block b, int index, byte[] src, int off) {
+        ((Buffer)b.data).position(index * this.recordsize);
+        b.data.put(src, off, this.recordsize);
+    }
+
+    /* Copies count records from index srcindex of src to index destindex of
+       dest. The ranges may not overlap. */
+    protected void move(Block src, int srcindex, Block dest, int destindex, int count) {
+        /* A buffer can't be put into itself, even when the ranges differ */
+        ByteBuffer srcdata = src == dest ? src.data.duplicate() : src.data;
+        int pos = srcindex * this.recordsize;
+
+        ((Buffer)srcdata).limit(pos + count * this.recordsize).position(pos);
+        ((Buffer)dest.data).position(destindex * this.recordsize);
+        try {
+            dest.data.put(srcdata);
+        } finally {
+            ((Buffer)srcdata).limit(srcdata.capacity());
+        }
+    }
+
+    /* Makes room for one more record at the right end */
+    protected void growRight() {
+        checkOpen();
+        if (this.rightindex == this.blocklen - 1) {
+            Block b = newblock();
+            b.leftlink = this.rightblock;
+            this.rightblock.rightlink = b;
+            this.rightblock = b;
+            this.rightindex = -1;
+            indexPushRight(b);
+        }
+        this.size++;
+        this.rightindex++;
+        this.state++;
+    }
+
+    protected void growLeft() {
+        checkOpen();
+        if (this.leftindex == 0) {
+            Block b = newblock();
+            b.rightlink = this.leftblock;
+            this.leftblock.leftlink = b;
+            this.leftblock = b;
+            this.leftindex = this.blocklen;
+            indexPushLeft(b);
+        }
+        this.size++;
+        this.leftindex--;
+        this.state++;
+    }
+
+    /* Drops the rightmost record, once it has been read */
+    protected void shrinkRight() {
+        Block prevblock;
+
+        this.rightindex--;
+        this.size--;
+        this.state++;
+        if (this.rightindex < 0) {
+            if (this.size > 0) {
+                prevblock = this.rightblock.leftlink;
+                freeblock(this.rightblock);
+                /* Don't keep a dropped mapping reachable */
+                prevblock.rightlink = null;
+                this.rightblock = prevblock;
+                this.rightindex = this.blocklen - 1;
+                indexPopRight();
+            } else {
+                this.leftindex = this.center + 1;
+                this.rightindex = this.center;
+            }
+        }
+    }
+
+    protected void shrinkLeft() {
+        Block prevblock;
+
+        this.leftindex++;
+        this.size--;
+        this.state++;
+        if (this.leftindex == this.blocklen) {
+            if (this.size > 0) {
+                prevblock = this.leftblock.rightlink;
+                freeblock(this.leftblock);
+                prevblock.leftlink = null;
+                this.leftblock = prevblock;
+                this.leftindex = 0;
+                indexPopLeft();
+            } else {
+                this.leftindex = this.center + 1;
+                this.rightindex = this.center;
+            }
+        }
+    }
+
+    protected void checkNotEmpty() {
+        checkOpen();
+        if (this.size == 0) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+    }
+
+    /**
+     * Appends the next {@link #getRecordSize()} bytes of {@code src},
+     * advancing its position.
+     */
+    public void addLast(ByteBuffer src) {
+        checkRoom(src);
+        growRight();
+        write(this.rightblock, this.rightindex, src);
+    }
+
+    public void addLast(byte[] src, int off) {
+        checkRoom(src, off);
+        growRight();
+        write(this.rightblock, this.rightindex, src, off);
+    }
+
+    public void addFirst(ByteBuffer src) {
+        checkRoom(src);
+        growLeft();
+        write(this.leftblock, this.leftindex, src);
+    }
+
+    public void addFirst(byte[] src, int off) {
+        checkRoom(src, off);
+        growLeft();
+        write(this.leftblock, this.leftindex, src, off);
+    }
+
+    /**
+     * Removes the leftmost record, copying it into {@code dest} and
+     * advancing its position.
+     */
+    public void removeFirst(ByteBuffer dest) {
+        checkNotEmpty();
+        checkRoom(dest);
+        read(this.leftblock, this.leftindex, dest);
+        shrinkLeft();
+    }
+
+    public void removeFirst(byte[] dest, int off) {
+        checkNotEmpty();
+        checkRoom(dest, off);
+        read(this.leftblock, this.leftindex, dest, off);
+        shrinkLeft();
+    }
+
+    public void removeLast(ByteBuffer dest) {
+        checkNotEmpty();
+        checkRoom(dest);
+        read(this.rightblock, this.rightindex, dest);
+        shrinkRight();
+    }
+
+    public void removeLast(byte[] dest, int off) {
+        checkNotEmpty();
+        checkRoom(dest, off);
+        read(this.rightblock, this.rightindex, dest, off);
+        shrinkRight();
+    }
+
+    /* Removes the leftmost record without reading it */
+    public void discardFirst() {
+        checkNotEmpty();
+        shrinkLeft();
+    }
+
+    public void discardLast() {
+        checkNotEmpty();
+        shrinkRight();
+    }
+
+    protected int checkIndex(int i) {
+        checkOpen();
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for deque of length " + this.size);
+        }
+        return i + this.leftindex;
+    }
+
+    /**
+     * Copies record {@code i} into {@code dest}, advancing its position.
+     */
+    public void get(int i, ByteBuffer dest) {
+        i = checkIndex(i);
+        checkRoom(dest);
+        read(blockAt(i), i & this.blockmask, dest);
+    }
+
+    public void get(int i, byte[] dest, int off) {
+        i = checkIndex(i);
+        checkRoom(dest, off);
+        read(blockAt(i), i & this.blockmask, dest, off);
+    }
+
+    /**
+     * Overwrites record {@code i} with the next record of {@code src}.
+     */
+    public void set(int i, ByteBuffer src) {
+        i = checkIndex(i);
+        checkRoom(src);
+        write(blockAt(i), i & this.blockmask, src);
+    }
+
+    public void set(int i, byte[] src, int off) {
+        i = checkIndex(i);
+        checkRoom(src, off);
+        write(blockAt(i), i & this.blockmask, src, off);
+    }
+
+    public void rotate(int n) {
+        Block b = null;
+        Block leftblock = this.leftblock;
+        Block rightblock = this.rightblock;
+        int leftindex = this.leftindex;
+        int rightindex = this.rightindex;
+        int len = this.size, halflen = len >> 1;
+        int m;
+
+        checkOpen();
+        if (len <= 1) {
+            return;
+        }
+        if (n > halflen || n < -halflen) {
+            n %= len;
+            if (n > halflen) {
+                n -= len;
+            } else if (n < -halflen) {
+                n += len;
+            }
+        }
+        assert(-halflen <= n && n <= halflen);
+
+        this.state++;
+        while (n > 0) {
+            if (leftindex == 0) {
+                if (b == null) {
+                    b = newblock();
+                }
+                b.rightlink = leftblock;
+                leftblock.leftlink = b;
+                leftblock = b;
+                leftindex = this.blocklen;
+                indexPushLeft(b);
+                b = null;
+            }
+            m = n;
+            if (m > rightindex + 1) {
+                m = rightindex + 1;
+            }
+            if (m > leftindex) {
+                m = leftindex;
+            }
+            rightindex -= m;
+            leftindex -= m;
+            n -= m;
+            move(rightblock, rightindex + 1, leftblock, leftindex, m);
+            if (rightindex < 0) {
+                b = rightblock;
+                rightblock = rightblock.leftlink;
+                /* Don't keep a dropped mapping reachable, as in shrinkRight() */
+                rightblock.rightlink = null;
+                b.leftlink = null;
+                rightindex = this.blocklen - 1;
+                indexPopRight();
+            }
+        }
+        while (n < 0) {
+            if (rightindex == this.blocklen - 1) {
+                if (b == null) {
+                    b = newblock();
+                }
+                b.leftlink = rightblock;
+                rightblock.rightlink = b;
+                rightblock = b;
+                rightindex = -1;
+                indexPushRight(b);
+                b = null;
+            }
+            m = -n;
+            if (m > this.blocklen - leftindex) {
+                m = this.blocklen - leftindex;
+            }
+            if (m > this.blocklen - 1 - rightindex) {
+                m = this.blocklen - 1 - rightindex;
+            }
+            move(leftblock, leftindex, rightblock, rightindex + 1, m);
+            leftindex += m;
+            rightindex += m;
+            n += m;
+            if (leftindex == this.blocklen) {
+                b = leftblock;
+                leftblock = leftblock.rightlink;
+                leftblock.leftlink = null;
+                b.rightlink = null;
+                leftindex = 0;
+                indexPopLeft();
+            }
+        }
+        if (b != null) {
+            freeblock(b);
+        }
+        this.leftblock = leftblock;
+        this.rightblock = rightblock;
+        this.leftindex = leftindex;
+        this.rightindex = rightindex;
+    }
+
+    public void clear() {
+        Block b, next;
+
+        checkOpen();
+        /* The link past rightblock may be stale, so stop there */
+        for (b = this.rightblock; b != this.leftblock; b = next) {
+            next = b.leftlink;
+            freeblock(b);
+        }
+        b.leftlink = null;
+        b.rightlink = null;
+        while (this.numblocks > 0) {
+            this.numblocks--;
+            this.blockindex[(this.blockindexhead + this.numblocks) & (this.blockindex.length - 1)] = null;
+        }
+        this.size = 0;
+        this.leftblock = b;
+        this.rightblock = b;
+        this.leftindex = this.center + 1;
+        this.rightindex = this.center;
+        this.blockindex[0] = b;
+        this.blockindexhead = 0;
+        this.numblocks = 1;
+        this.state++;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public int getRecordSize() {
+        return this.recordsize;
+    }
+
+    public int getBlockLength() {
+        return this.blocklen;
+    }
+
+    /**
+     * Drops every block. A file-backed deque also closes its file, without
+     * deleting it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.size = 0;
+        this.leftblock = null;
+        this.rightblock = null;
+        this.blockindex = null;
+        this.freeblocks = null;
+        this.numfreeblocks = 0;
+        this.state++;
+        if (this.channel != null) {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.github.gaming32.stdpy;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BinaryOperator;
+
+/* A window over the last maxlen items added, like a BlockDeque with a
+   maxlen, that also keeps the items combined with an associative operator
+   (a sum, product, minimum, gcd, string concatenation...) up to date in O(1)
+   amortized time per item.
+
+   This is two-stack aggregation. The window is split into a front part,
+   which the oldest items are evicted from, and a back part, which new items
+   are added to. The back keeps a single running aggregate. The front keeps
+   one aggregate per item, of that item and everything after it in the
+   front, so evicting an item just drops its aggregate. When the front runs
+   out, all of the back moves to it at once, which is O(n) but happens at
+   most once per n evictions. The operator is only ever applied as
+   op(older, newer), so it doesn't need to be commutative.
+
+   LongSlidingWindow and DoubleSlidingWindow are primitive versions for
+   sums, minimums and maximums.
+*/
+public class SlidingWindow<E> {
+    protected final BinaryOperator<E> op;
+    protected final int maxlen;
+    protected final BlockDeque<E> items = new BlockDeque<>();
+
+    /* front.get(i) is the aggregate of items i through front.size() - 1 */
+    protected final BlockDeque<E> front = new BlockDeque<>();
+
+    /* The aggregate of the rest of the items, if there are any */
+    protected E back;
+
+    public SlidingWindow(BinaryOperator<E> op) {
+        this(op, -1);
+    }
+
+    /* A window that evicts its oldest item whenever adding an item would
+       make it longer than maxlen; a maxlen of -1 means it never evicts */
+    public SlidingWindow(BinaryOperator<E> op, int maxlen) {
+        if (op == null) {
+            throw new NullPointerException();
+        }
+        if (maxlen < -1) {
+            throw new IllegalArgumentException("maxlen must be non-negative or -1");
+        }
+        this.op = op;
+        this.maxlen = maxlen == -1 ? Integer.MAX_VALUE : maxlen;
+    }
+
+    public int getMaxlen() {
+        return this.maxlen == Integer.MAX_VALUE ? -1 : this.maxlen;
+    }
+
+    public int size() {
+        return this.items.size();
+    }
+
+    public boolean isEmpty() {
+        return this.items.isEmpty();
+    }
+
+    /* Adds an item as the newest one, first evicting the oldest if the
+       window is full */
+    public void addLast(E item) {
+        if (this.maxlen == 0) {
+            return;
+        }
+        if (this.items.size() == this.maxlen) {
+            removeFirst();
+        }
+        this.items.addLast(item);
+        if (this.items.size() - this.front.size() == 1) {
+            this.back = item;
+        } else {
+            this.back = this.op.apply(this.back, item);
+        }
+    }
+
+    /* Removes and returns the oldest item */
+    public E removeFirst() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("pop from an empty window");
+        }
+        if (this.front.isEmpty()) {
+            flip();
+        }
+        this.front.removeFirst();
+        return this.items.removeFirst();
+    }
+
+    /* Moves every item to the front, which must be empty */
+    protected void flip() {
+        Iterator<E> it = this.items.descendingIterator();
+        E aggregate = it.next();
+
+        this.front.addFirst(aggregate);
+        while (it.hasNext()) {
+            aggregate = this.op.apply(it.next(), aggregate);
+            this.front.addFirst(aggregate);
+        }
+        this.back = null;
+    }
+
+    /* All of the items in the window combined, oldest first */
+    public E get() {
+        if (this.items.isEmpty()) {
+            throw new NoSuchElementException("empty window");
+        }
+        if (this.front.isEmpty()) {
+            return this.back;
+        }
+        if (this.front.size() == this.items.size()) {
+            return this.front.getFirst();
+        }
+        return this.op.apply(this.front.getFirst(), this.back);
+    }
+
+    public E getFirst() {
+        return this.items.getFirst();
+    }
+
+    public E getLast() {
+        return this.items.getLast();
+    }
+
+    public void clear() {
+        this.items.clear();
+        this.front.clear();
+        this.back = null;
+    }
+
+    @Override
+    public String toString() {
+        return this.items.toString();
+    }
+}
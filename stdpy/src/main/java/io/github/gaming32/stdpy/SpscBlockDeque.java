@@ -0,0 +1,309 @@
+package io.github.gaming32.stdpy;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+
+/* A queue for exactly one producer thread and one consumer thread, with the
+   linked block layout of BlockDeque and neither locks nor CAS.
+
+   The producer owns the right end: it calls addLast()/offer(). The consumer
+   owns the left end: it calls removeFirst()/poll()/peek()/drain() and
+   iterates. Calling a method from the wrong side, or from a second producer
+   or consumer, corrupts the queue.
+
+   The ends are positions that only ever grow. The producer stores an item
+   and any new block link, then publishes its position with a lazySet
+   (a release store); the consumer reads it with a volatile read (an
+   acquire), which makes everything written before it visible. Consumption
+   is published the same way in the other direction. Each side also keeps a
+   plain copy of the other side's position and only rereads the volatile
+   one when the copy says the queue is empty (or full), so in a busy queue
+   the two cores rarely touch each other's cache lines. Each end's fields
+   are declared in a class of their own, with padding classes around them:
+   HotSpot lays out a superclass's fields before its subclass's, but may
+   reorder the fields within a class, so only the class levels are sure to
+   keep the two ends 128 bytes apart (a cache line and the one the CPU
+   prefetches with it).
+
+   Blocks are never reused: a slot is written once by the producer and
+   cleared once by the consumer, and a drained block is left to the garbage
+   collector. Null items are not allowed.
+*/
+@SuppressWarnings("unchecked")
+public class SpscBlockDeque<E> extends SpscBlockDequePad2<E> {
+    protected static final int BLOCKLEN = 64;
+    protected static final int BLOCKMASK = BLOCKLEN - 1;
+
+    protected static final class Block {
+        protected final Object[] data = new Object[BLOCKLEN];
+        protected Block rightlink;
+    }
+
+    protected final long capacity;
+
+    public SpscBlockDeque() {
+        this(Long.MAX_VALUE);
+    }
+
+    /* A queue that holds at most capacity items; offer() returns false and
+       addLast() throws when it is full */
+    public SpscBlockDeque(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        Block b = new Block();
+        this.leftblock = b;
+        this.rightblock = b;
+        this.capacity = capacity;
+    }
+
+    public long getCapacity() {
+        return this.capacity == Long.MAX_VALUE ? -1 : this.capacity;
+    }
+
+    // ****************************************************
+    // *                  Producer side                   *
+    // ****************************************************
+
+    @Override
+    public boolean offer(E e) {
+        long index = this.rightindex;
+        int slot;
+        Block b;
+
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (index - this.leftcache >= this.capacity) {
+            this.leftcache = this.leftindex;
+            if (index - this.leftcache >= this.capacity) {
+                return false;
+            }
+        }
+        slot = (int)index & BLOCKMASK;
+        if (slot == 0 && index != 0) {
+            b = new Block();
+            this.rightblock.rightlink = b;
+            this.rightblock = b;
+        }
+        this.rightblock.data[slot] = e;
+        RIGHTINDEX.lazySet(this, index + 1);
+        return true;
+    }
+
+    public void addLast(E e) {
+        if (!offer(e)) {
+            throw new IllegalStateException("deque full");
+        }
+    }
+
+    // ****************************************************
+    // *                  Consumer side                   *
+    // ****************************************************
+
+    /* Whether an item is available, rereading the producer's position only
+       if the cached copy is used up */
+    protected boolean available(long index) {
+        if (index == this.rightcache) {
+            this.rightcache = this.rightindex;
+            return index != this.rightcache;
+        }
+        return true;
+    }
+
+    /* The block holding position index, stepping onto the next block when
+       the consumer crosses into it. leftbase is the position of the first
+       slot of leftblock. */
+    protected Block leftblockFor(long index) {
+        Block b = this.leftblock;
+        if (index - this.leftbase == BLOCKLEN) {
+            Block next = b.rightlink;
+            b.rightlink = null;
+            this.leftblock = next;
+            this.leftbase = index;
+            return next;
+        }
+        return b;
+    }
+
+    @Override
+    public E poll() {
+        long index = this.leftindex;
+        int slot;
+        Block b;
+        Object item;
+
+        if (!available(index)) {
+            return null;
+        }
+        b = leftblockFor(index);
+        slot = (int)index & BLOCKMASK;
+        item = b.data[slot];
+        b.data[slot] = null;
+        LEFTINDEX.lazySet(this, index + 1);
+        return (E)item;
+    }
+
+    @Override
+    public E peek() {
+        long index = this.leftindex;
+
+        if (!available(index)) {
+            return null;
+        }
+        return (E)leftblockFor(index).data[(int)index & BLOCKMASK];
+    }
+
+    public E removeFirst() {
+        E item = poll();
+        if (item == null) {
+            throw new NoSuchElementException("pop from an empty deque");
+        }
+        return item;
+    }
+
+    public E pollFirst() {
+        return poll();
+    }
+
+    public E peekFirst() {
+        return peek();
+    }
+
+    /* Passes up to limit available items to action, oldest first, and
+       returns how many there were. The consumer's position is published once
+       for the whole batch rather than once per item, or up to the item that
+       action threw on. */
+    public int drain(Consumer<? super E> action, int limit) {
+        long index = this.leftindex, base = this.leftbase, stop;
+        int n, slot;
+        Block b = this.leftblock;
+        Object item;
+
+        this.rightcache = this.rightindex;
+        n = (int)Math.min(limit, this.rightcache - index);
+        if (n <= 0) {
+            return 0;
+        }
+        stop = index + n;
+        try {
+            while (index < stop) {
+                if (index - base == BLOCKLEN) {
+                    Block next = b.rightlink;
+                    b.rightlink = null;
+                    b = next;
+                    base = index;
+                }
+                slot = (int)index & BLOCKMASK;
+                item = b.data[slot];
+                b.data[slot] = null;
+                index++;
+                action.accept((E)item);
+            }
+        } finally {
+            this.leftblock = b;
+            this.leftbase = base;
+            LEFTINDEX.lazySet(this, index);
+        }
+        return n;
+    }
+
+    public int drain(Consumer<? super E> action) {
+        return drain(action, Integer.MAX_VALUE);
+    }
+
+    /* Walks the items available when it was created. Consumer side only, and
+       the queue mustn't be consumed from while iterating. */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            final long stop = SpscBlockDeque.this.rightindex;
+            long index = SpscBlockDeque.this.leftindex;
+            long base = SpscBlockDeque.this.leftbase;
+            Block b = SpscBlockDeque.this.leftblock;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < this.stop;
+            }
+
+            @Override
+            public E next() {
+                int slot;
+
+                if (this.index >= this.stop) {
+                    throw new NoSuchElementException();
+                }
+                if (this.index - this.base == BLOCKLEN) {
+                    this.b = this.b.rightlink;
+                    this.base = this.index;
+                }
+                slot = (int)this.index & BLOCKMASK;
+                this.index++;
+                return (E)this.b.data[slot];
+            }
+        };
+    }
+
+    // ****************************************************
+    // *                   Either side                    *
+    // ****************************************************
+
+    /* Exact when called from either side while the other is idle, and
+       otherwise an estimate between the sizes before and after */
+    @Override
+    public int size() {
+        long left = this.leftindex, right = this.rightindex;
+        return (int)Math.min(Math.max(right - left, 0), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.rightindex == this.leftindex;
+    }
+}
+
+abstract class SpscBlockDequePad0<E> extends AbstractQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p08, p09, p0a, p0b, p0c, p0d, p0e, p0f;
+}
+
+/* The fields written by the consumer */
+@SuppressWarnings("unchecked")
+abstract class SpscBlockDequeConsumer<E> extends SpscBlockDequePad0<E> {
+    protected static final AtomicLongFieldUpdater<SpscBlockDequeConsumer<?>> LEFTINDEX =
+        AtomicLongFieldUpdater.newUpdater(
+            (Class<SpscBlockDequeConsumer<?>>)(Class<?>)SpscBlockDequeConsumer.class, "leftindex"
+        );
+
+    protected volatile long leftindex;
+    protected long rightcache;
+    protected SpscBlockDeque.Block leftblock;
+    protected long leftbase;
+}
+
+abstract class SpscBlockDequePad1<E> extends SpscBlockDequeConsumer<E> {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+    long p18, p19, p1a, p1b, p1c, p1d, p1e, p1f;
+}
+
+/* The fields written by the producer */
+@SuppressWarnings("unchecked")
+abstract class SpscBlockDequeProducer<E> extends SpscBlockDequePad1<E> {
+    protected static final AtomicLongFieldUpdater<SpscBlockDequeProducer<?>> RIGHTINDEX =
+        AtomicLongFieldUpdater.newUpdater(
+            (Class<SpscBlockDequeProducer<?>>)(Class<?>)SpscBlockDequeProducer.class, "rightindex"
+        );
+
+    protected volatile long rightindex;
+    protected long leftcache;
+    protected SpscBlockDeque.Block rightblock;
+}
+
+abstract class SpscBlockDequePad2<E> extends SpscBlockDequeProducer<E> {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+    long p28, p29, p2a, p2b, p2c, p2d, p2e, p2f;
+}
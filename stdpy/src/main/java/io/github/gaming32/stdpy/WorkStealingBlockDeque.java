@@ -0,0 +1,221 @@
+package io.github.gaming32.stdpy;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/* A Chase-Lev work-stealing deque for schedulers, stored in blocks.
+
+   One thread, the owner, calls push() and pop(), which work at the bottom
+   end in LIFO order. Any number of other threads call steal(), which takes
+   from the top end in FIFO order. The owner never takes a lock or does a
+   CAS except to take the very last item, which it may be racing a thief
+   for; thieves claim an item by advancing top with a CAS.
+
+   top and bottom are positions that only ever grow (bottom also goes back
+   down as the owner pops). Position p lives in slot p & BLOCKMASK of the
+   block at index (p >>> BLOCKSHIFT) & (blocks.length - 1) of the block
+   table, so the table is a ring of blocks. When the live positions would
+   wrap onto the block holding top, the table is replaced by one twice the
+   size. Only the block references are copied, never the items, and since
+   the new table refers to the same blocks, a thief that is still reading
+   through the old table finds the right item anyway.
+
+   Blocks are kept in the table and reused as the ring comes around. Thieves
+   don't clear the slots they take from, because by then the owner may have
+   reused them. Instead the owner clears the slots below top whenever it
+   enters a new block and whenever it finds the deque empty, so a stolen
+   item is released no later than that.
+
+   This isn't a Collection: anything but the three operations above would
+   be either racy or slow, which is no help to a scheduler. Null items are
+   not allowed.
+*/
+@SuppressWarnings("unchecked")
+public class WorkStealingBlockDeque<E> {
+    protected static final int BLOCKSHIFT = 6;
+    protected static final int BLOCKLEN = 1 << BLOCKSHIFT;
+    protected static final int BLOCKMASK = BLOCKLEN - 1;
+
+    protected static final AtomicLongFieldUpdater<WorkStealingBlockDeque<?>> TOP =
+        AtomicLongFieldUpdater.newUpdater(
+            (Class<WorkStealingBlockDeque<?>>)(Class<?>)WorkStealingBlockDeque.class, "top"
+        );
+    protected static final AtomicLongFieldUpdater<WorkStealingBlockDeque<?>> BOTTOM =
+        AtomicLongFieldUpdater.newUpdater(
+            (Class<WorkStealingBlockDeque<?>>)(Class<?>)WorkStealingBlockDeque.class, "bottom"
+        );
+
+    protected volatile long top;
+    protected volatile long bottom;
+    protected volatile Object[][] blocks;
+
+    // Only used by the owner: every slot below cleared has been cleared
+    protected long cleared;
+
+    public WorkStealingBlockDeque() {
+        this(2);
+    }
+
+    /* A deque whose block table starts with room for the given number of
+       blocks; it must be a power of two */
+    public WorkStealingBlockDeque(int initialBlocks) {
+        if (initialBlocks < 1 || Integer.bitCount(initialBlocks) != 1) {
+            throw new IllegalArgumentException("initialBlocks must be a power of two");
+        }
+        this.blocks = new Object[initialBlocks][];
+    }
+
+    // ****************************************************
+    // *                    Owner side                    *
+    // ****************************************************
+
+    public void push(E e) {
+        long b = this.bottom, t;
+        Object[][] table = this.blocks;
+        int slot = (int)b & BLOCKMASK, index;
+        Object[] block;
+
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        index = (int)(b >>> BLOCKSHIFT) & (table.length - 1);
+        block = table[index];
+        if (slot == 0 || block == null) {
+            t = this.top;
+            clearStolen(t, table);
+            if ((b >>> BLOCKSHIFT) - (t >>> BLOCKSHIFT) >= table.length) {
+                table = grow(t, b);
+                index = (int)(b >>> BLOCKSHIFT) & (table.length - 1);
+                block = table[index];
+            }
+            if (block == null) {
+                block = new Object[BLOCKLEN];
+                table[index] = block;
+            }
+        }
+        block[slot] = e;
+        /* Publishes the item, and any new block or table, to thieves */
+        BOTTOM.lazySet(this, b + 1);
+    }
+
+    /* Takes the most recently pushed item, or returns null if there is none
+       left (thieves may have taken them) */
+    public E pop() {
+        long b = this.bottom - 1, t;
+        Object[][] table = this.blocks;
+        Object[] block;
+        Object item;
+
+        /* A volatile write followed by a volatile read, so that a thief
+           can't pass the new bottom without this thread seeing its top */
+        this.bottom = b;
+        t = this.top;
+        if (t > b) {
+            this.bottom = t;
+            clearStolen(t, table);
+            return null;
+        }
+        block = table[(int)(b >>> BLOCKSHIFT) & (table.length - 1)];
+        item = block[(int)b & BLOCKMASK];
+        if (t < b) {
+            block[(int)b & BLOCKMASK] = null;
+            return (E)item;
+        }
+        /* The last item, which a thief may be taking as well */
+        if (TOP.compareAndSet(this, t, t + 1)) {
+            /* Its own slot as well as any that thieves took from */
+            clearStolen(t + 1, table);
+        } else {
+            item = null;
+        }
+        this.bottom = t + 1;
+        return (E)item;
+    }
+
+    /* Nulls out the slots of items that thieves have taken, up to top. Slots
+       below top are never read again by a thief that then succeeds. */
+    protected void clearStolen(long t, Object[][] table) {
+        long p = this.cleared;
+        int mask = table.length - 1, slot, stop;
+        Object[] block;
+
+        while (p < t) {
+            block = table[(int)(p >>> BLOCKSHIFT) & mask];
+            slot = (int)p & BLOCKMASK;
+            stop = (int)Math.min(BLOCKLEN, slot + (t - p));
+            if (block != null) {
+                for (int i = slot; i < stop; i++) {
+                    block[i] = null;
+                }
+            }
+            p += stop - slot;
+        }
+        this.cleared = t;
+    }
+
+    /* Doubles the block table until the block for position b fits without
+       wrapping onto top's, moving over the references to the blocks that
+       hold positions t to b - 1. */
+    protected Object[][] grow(long t, long b) {
+        Object[][] table = this.blocks, newTable;
+        long first = t >>> BLOCKSHIFT, last = b >>> BLOCKSHIFT;
+        int length = table.length;
+
+        while (last - first >= length) {
+            length <<= 1;
+            if (length <= 0) {
+                throw new IllegalStateException("deque too big");
+            }
+        }
+        newTable = new Object[length][];
+        if (t < b) {
+            for (long i = first; i <= (b - 1) >>> BLOCKSHIFT; i++) {
+                newTable[(int)i & (length - 1)] = table[(int)i & (table.length - 1)];
+            }
+        }
+        this.blocks = newTable;
+        return newTable;
+    }
+
+    // ****************************************************
+    // *                    Thief side                    *
+    // ****************************************************
+
+    /* Takes the oldest item, or returns null if the deque looked empty or
+       another thread took that item first. A scheduler usually just moves
+       on to another victim either way. */
+    public E steal() {
+        long t = this.top, b = this.bottom;
+        Object[][] table;
+        Object[] block;
+        Object item;
+
+        if (t >= b) {
+            return null;
+        }
+        table = this.blocks;
+        block = table[(int)(t >>> BLOCKSHIFT) & (table.length - 1)];
+        if (block == null) {
+            return null;
+        }
+        item = block[(int)t & BLOCKMASK];
+        /* A null item was cleared after being taken, so the CAS would fail */
+        if (item == null || !TOP.compareAndSet(this, t, t + 1)) {
+            return null;
+        }
+        return (E)item;
+    }
+
+    // ****************************************************
+    // *                   Either side                    *
+    // ****************************************************
+
+    /* Only an estimate while other threads use the deque */
+    public int size() {
+        long t = this.top, b = this.bottom;
+        return (int)Math.min(Math.max(b - t, 0), Integer.MAX_VALUE);
+    }
+
+    public boolean isEmpty() {
+        return this.bottom <= this.top;
+    }
+}
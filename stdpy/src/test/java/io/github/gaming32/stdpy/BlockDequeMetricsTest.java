@@ -0,0 +1,74 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+public class BlockDequeMetricsTest {
+    @Test
+    public void testBlocks() {
+        BlockDequeMetrics metrics = new BlockDequeMetrics();
+        BlockDeque<Integer> deque = new BlockDeque<>(16, null);
+        deque.setListener(metrics);
+        for (int i = 0; i < 64; i++) {
+            deque.addLast(i);
+        }
+        /* The small block becomes a full one, half empty, at 8 items */
+        assertEquals(metrics.getBlocksAllocated(), 5);
+        assertEquals(metrics.getBlocksReused(), 0);
+        for (int i = 0; i < 64; i++) {
+            deque.removeFirst();
+        }
+        /* All but the block the empty deque keeps */
+        assertEquals(metrics.getBlocksCached(), 4);
+        for (int i = 0; i < 48; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(metrics.getBlocksReused(), 3);
+        assertEquals(metrics.getBlockHitRate(), 3 / 8.0, 1e-9);
+        metrics.reset();
+        assertEquals(metrics.getBlocksAllocated(), 0);
+    }
+
+    @Test
+    public void testEvents() {
+        BlockDequeMetrics metrics = new BlockDequeMetrics();
+        BlockDeque<Integer> deque = new BlockDeque<>(null, 10);
+        deque.setListener(metrics);
+        for (int i = 0; i < 15; i++) {
+            deque.addLast(i);
+        }
+        deque.addAllFirst(new Integer[] {1, 2, 3}, 0, 3);
+        deque.addAllLast(new Integer[12], 0, 12);
+        assertEquals(metrics.getEvictions(), 5 + 3 + 12);
+        deque.rotate(3);
+        deque.rotate(-8);
+        assertEquals(metrics.getRotations(), 2);
+        /* Ten items fit in a small block, which rotates in place */
+        assertEquals(metrics.getItemsRotated(), 20);
+
+        Iterator<Integer> it = deque.iterator();
+        it.next();
+        deque.addLast(0);
+        try {
+            it.next();
+        } catch (IllegalStateException e) {
+        }
+        assertEquals(metrics.getMutationErrors(), 1);
+    }
+
+    @Test
+    public void testClone() {
+        BlockDequeMetrics metrics = new BlockDequeMetrics();
+        BlockDeque<Integer> deque = new BlockDeque<>(null, 10);
+        deque.setListener(metrics);
+        BlockDeque<Integer> copy = deque.clone();
+        assertEquals(copy.getListener(), null);
+        for (int i = 0; i < 15; i++) {
+            copy.addLast(i);
+        }
+        assertEquals(metrics.getEvictions(), 0);
+    }
+}
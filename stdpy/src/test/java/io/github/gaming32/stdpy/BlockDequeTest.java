@@ -1,11 +1,20 @@
 package io.github.gaming32.stdpy;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -49,6 +58,143 @@ public class BlockDequeTest {
         assertEquals(deque.toString(), "[3, 4, 5, 6]");
     }
 
+    @Test
+    public void testAddAllArray() {
+        Integer[] a = new Integer[200];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i;
+        }
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        deque.addAllLast(a, 100, 100);
+        deque.addAllFirst(a, 0, 100);
+        assertEquals(deque.size(), 200);
+        assertEquals(deque.get(0), Integer.valueOf(99));
+        assertEquals(deque.get(99), Integer.valueOf(0));
+        assertEquals(deque.get(100), Integer.valueOf(100));
+        assertEquals(deque.get(199), Integer.valueOf(199));
+    }
+
+    @Test
+    public void testAddAllWithMax() {
+        BlockDeque<Integer> deque = new BlockDeque<>(Arrays.asList(1, 2), 4);
+        deque.addAllLast(Arrays.asList(3, 4, 5));
+        assertEquals(deque.toString(), "[2, 3, 4, 5]");
+        deque.addAllFirst(Arrays.asList(6, 7));
+        assertEquals(deque.toString(), "[7, 6, 2, 3]");
+        deque.addAllLast(initTestDeque());
+        assertEquals(deque.toString(), "[3, 4, 5, 6]");
+        deque.addAllFirst(initTestDeque());
+        assertEquals(deque.toString(), "[6, 5, 4, 3]");
+    }
+
+    @Test
+    public void testAddAllDeque() {
+        BlockDeque<Integer> source = new BlockDeque<>();
+        for (int i = 0; i < 1000; i++) {
+            source.addLast(i);
+        }
+        source.rotate(10);
+        BlockDeque<Integer> deque = new BlockDeque<>(source);
+        assertEquals(new ArrayList<>(deque), new ArrayList<>(source));
+        deque.addAllLast(deque);
+        assertEquals(deque.size(), 2000);
+        assertEquals(deque.get(1000), Integer.valueOf(990));
+    }
+
+    @Test
+    public void testBlockLength() {
+        BlockDeque<Integer> deque = new BlockDeque<>(4, null);
+        for (int i = 0; i < 100; i++) {
+            deque.addLast(i);
+            deque.addFirst(-i);
+        }
+        assertEquals(deque.getBlockLength(), 4);
+        assertEquals(deque.get(99), Integer.valueOf(0));
+        assertEquals(deque.indexOf(50), 150);
+        deque.rotate(37);
+        deque.remove(10);
+        deque.add(150, 1000);
+        assertEquals(deque.get(150), Integer.valueOf(1000));
+        assertEquals(deque.size(), 200);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadBlockLength() {
+        new BlockDeque<>(48, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPoolBlockLength() {
+        new BlockDeque<>(32, BlockPool.threadLocal(4));
+    }
+
+    @Test
+    public void testSmallDeque() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        assertEquals(deque.leftblock.data.length, 0);
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+            if (deque.size() > 3) {
+                assertEquals(deque.removeFirst(), Integer.valueOf(i - 3));
+            }
+        }
+        assertEquals(deque.leftblock.data.length, 8);
+        assertEquals(deque.toString(), "[997, 998, 999]");
+        deque.addFirst(996);
+        deque.rotate(1);
+        assertEquals(deque.toString(), "[999, 996, 997, 998]");
+        deque.addAllFirst(Arrays.asList(1, 2));
+        assertEquals(deque.toString(), "[2, 1, 999, 996, 997, 998]");
+        assertEquals(deque.leftblock.data.length, 8);
+        for (int i = 0; i < 100; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(deque.leftblock.data.length, 64);
+        assertEquals(deque.get(50), Integer.valueOf(44));
+    }
+
+    @Test
+    public void testTrimToSize() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        for (int i = 0; i < 10000; i++) {
+            deque.addLast(i);
+        }
+        for (int i = 0; i < 9997; i++) {
+            deque.removeFirst();
+        }
+        assertEquals(deque.numfreeblocks, 16);
+        deque.trimToSize();
+        assertEquals(deque.numfreeblocks, 0);
+        assertNull(deque.blockindex);
+        assertEquals(deque.leftblock.data.length, 4);
+        assertEquals(deque.toString(), "[9997, 9998, 9999]");
+        deque.clear();
+        deque.trimToSize();
+        assertEquals(deque.leftblock.data.length, 0);
+        deque.addFirst(1);
+        assertEquals(deque.toString(), "[1]");
+    }
+
+    @Test
+    public void testTrimPeriod() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        deque.setTrimPeriod(8);
+        for (int i = 0; i < 10000; i++) {
+            deque.addLast(i);
+        }
+        for (int i = 0; i < 9900; i++) {
+            deque.removeFirst();
+        }
+        int cached = deque.numfreeblocks;
+        for (int i = 0; i < 10000; i++) {
+            deque.addLast(i);
+            deque.removeFirst();
+        }
+        assertEquals(deque.numfreeblocks < cached, true);
+        assertEquals(deque.blockindex.length, 8);
+        assertEquals(deque.get(0), Integer.valueOf(9900));
+    }
+
     @Test
     public void testGet() {
         BlockDeque<Integer> deque = initTestDeque();
@@ -78,6 +224,30 @@ public class BlockDequeTest {
         assertEquals(deque.toString(), "[1, 2, 4, 5, 6]");
     }
 
+    @Test
+    public void testInsertIndex() {
+        BlockDeque<Integer> deque = initTestDeque();
+        deque.add(2, 10);
+        deque.add(5, 11);
+        assertEquals(deque.toString(), "[1, 2, 10, 3, 4, 11, 5, 6]");
+    }
+
+    @Test
+    public void testInsertRemoveManyBlocks() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            deque.add(i / 2, i);
+            list.add(i / 2, i);
+        }
+        assertEquals(new ArrayList<>(deque), list);
+        for (int i = 0; i < 250; i++) {
+            int index = (i * 7) % deque.size();
+            assertEquals(deque.remove(index), list.remove(index));
+        }
+        assertEquals(new ArrayList<>(deque), list);
+    }
+
     @Test
     public void testRemoveValue() {
         BlockDeque<Integer> deque = initTestDeque();
@@ -85,6 +255,83 @@ public class BlockDequeTest {
         assertEquals(deque.toString(), "[1, 2, 3, 5, 6]");
     }
 
+    @Test
+    public void testRemoveIf() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            deque.addFirst(i);
+            list.add(0, i);
+        }
+        assertEquals(deque.removeIf(i -> i % 3 != 0), true);
+        list.removeIf(i -> i % 3 != 0);
+        assertEquals(new ArrayList<>(deque), list);
+        assertEquals(deque.removeIf(i -> i < 0), false);
+        assertEquals(deque.removeIf(i -> true), true);
+        assertEquals(deque.size(), 0);
+        deque.addLast(1);
+        assertEquals(deque.toString(), "[1]");
+    }
+
+    @Test
+    public void testRemoveIfThrows() {
+        BlockDeque<Integer> deque = initTestDeque();
+        try {
+            deque.removeIf(i -> {
+                if (i == 4) {
+                    throw new IllegalArgumentException();
+                }
+                return i % 2 == 0;
+            });
+        } catch (IllegalArgumentException e) {
+        }
+        assertEquals(deque.toString(), "[1, 3, 4, 5, 6]");
+    }
+
+    @Test
+    public void testRemoveAllRetainAll() {
+        BlockDeque<Integer> deque = initTestDeque();
+        deque.removeAll(Arrays.asList(2, 5));
+        assertEquals(deque.toString(), "[1, 3, 4, 6]");
+        deque.retainAll(Arrays.asList(3, 6, 7));
+        assertEquals(deque.toString(), "[3, 6]");
+    }
+
+    @Test
+    public void testBulkRemove() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        Integer[] dest = new Integer[300];
+        assertEquals(deque.peekFirst(3, dest), 3);
+        assertEquals(deque.removeFirst(300, dest), 300);
+        assertEquals(dest[0], Integer.valueOf(0));
+        assertEquals(dest[299], Integer.valueOf(299));
+        assertEquals(deque.removeLast(200, dest), 200);
+        assertEquals(dest[0], Integer.valueOf(800));
+        assertEquals(dest[199], Integer.valueOf(999));
+        assertEquals(deque.size(), 500);
+        assertEquals(deque.getFirst(), Integer.valueOf(300));
+        assertEquals(deque.getLast(), Integer.valueOf(799));
+        assertEquals(deque.removeLast(300, dest), 300);
+        assertEquals(deque.removeFirst(300, dest), 200);
+        assertEquals(deque.size(), 0);
+        deque.addFirst(1);
+        assertEquals(deque.toString(), "[1]");
+    }
+
+    @Test
+    public void testDrainTo() {
+        BlockDeque<Integer> deque = initTestDeque();
+        List<Integer> list = new ArrayList<>();
+        assertEquals(deque.drainTo(list, 4), 4);
+        assertEquals(list.toString(), "[1, 2, 3, 4]");
+        assertEquals(deque.toString(), "[5, 6]");
+        assertEquals(deque.drainTo(list), 2);
+        assertEquals(deque.size(), 0);
+    }
+
     @Test
     public void testIter() {
         BlockDeque<Integer> deque = initTestDeque();
@@ -96,6 +343,32 @@ public class BlockDequeTest {
         assertEquals(deque.toString(), "[1, 2, 3, 4, 5, 6]"); // Test that it didn't get corrupted
     }
 
+    @Test
+    public void testSpliterator() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        for (int i = 0; i < 1000; i++) {
+            deque.addFirst(999 - i);
+        }
+        Spliterator<Integer> rest = deque.spliterator();
+        Spliterator<Integer> prefix = rest.trySplit();
+        assertEquals(prefix.estimateSize() + rest.estimateSize(), 1000);
+        List<Integer> list = new ArrayList<>();
+        prefix.forEachRemaining(list::add);
+        while (rest.tryAdvance(list::add)) {
+        }
+        assertEquals(list, new ArrayList<>(deque));
+    }
+
+    @Test
+    public void testParallelStream() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        for (int i = 0; i < 100000; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(deque.parallelStream().mapToLong(i -> i).sum(), 4999950000L);
+        assertEquals(deque.parallelStream().collect(Collectors.toList()), new ArrayList<>(deque));
+    }
+
     @Test
     public void testReverseIter() {
         BlockDeque<Integer> deque = initTestDeque();
@@ -107,4 +380,298 @@ public class BlockDequeTest {
         assertEquals(list.toString(), "[6, 5, 4, 3, 2, 1]");
         assertEquals(deque.toString(), "[1, 2, 3, 4, 5, 6]"); // Test that it didn't get corrupted
     }
+
+    @Test
+    public void testGetSetManyBlocks() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        deque.rotate(300);
+        deque.rotate(-450);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(deque.get(i), Integer.valueOf((i + 150) % 1000));
+        }
+        for (int i = 0; i < 1000; i++) {
+            deque.set(i, i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(deque.get(i), Integer.valueOf(i));
+        }
+    }
+
+    @Test
+    public void testRemoveFirstThenAddFirst() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        for (int i = 0; i < 200; i++) {
+            deque.addLast(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            deque.removeFirst();
+        }
+        for (int i = 99; i >= 0; i--) {
+            deque.addFirst(i);
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(deque.get(i), Integer.valueOf(i));
+        }
+    }
+
+    @Test
+    public void testClone() {
+        for (int n : new int[] {0, 1, 3, 64, 1000}) {
+            BlockDeque<Integer> deque = new BlockDeque<>(null, 2000, 16, null);
+            for (int i = 0; i < n; i++) {
+                deque.addFirst(i);
+            }
+            BlockDeque<Integer> copy = deque.clone();
+            assertEquals(copy, deque);
+            assertEquals(copy.getMaxlen(), 2000);
+            assertEquals(copy.getBlockLength(), 16);
+            copy.addLast(-1);
+            assertEquals(deque.size(), n);
+            if (n > 0) {
+                copy.set(0, -2);
+                assertEquals(deque.get(0), Integer.valueOf(n - 1));
+            }
+            assertEquals(copy.removeLast(), Integer.valueOf(-1));
+            for (int i = 0; i < n; i++) {
+                copy.removeFirst();
+            }
+            assertEquals(copy.size(), 0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSerialize() throws IOException, ClassNotFoundException {
+        BlockDeque<String> deque = new BlockDeque<>(null, 500, 8, null);
+        for (int i = 0; i < 300; i++) {
+            deque.addLast(Integer.toString(i));
+            deque.addFirst(i % 7 == 0 ? null : Integer.toString(-i));
+        }
+        deque.setTrimPeriod(32);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(deque);
+        }
+        BlockDeque<String> copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (BlockDeque<String>)in.readObject();
+        }
+        assertEquals(copy.size(), 500);
+        assertEquals(copy.toString(), deque.toString());
+        assertEquals(copy.getMaxlen(), 500);
+        assertEquals(copy.getBlockLength(), 8);
+        assertEquals(copy.getTrimPeriod(), 32);
+        copy.addLast("x");
+        assertEquals(copy.size(), 500);
+        assertEquals(copy.getLast(), "x");
+    }
+
+    @Test
+    public void testSnapshot() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        List<Integer> empty = deque.snapshot();
+        deque.addLast(1);
+        deque.addLast(2);
+        List<Integer> small = deque.snapshot();
+        for (int i = 3; i <= 1000; i++) {
+            deque.addLast(i);
+        }
+        List<Integer> large = deque.snapshot();
+        List<Integer> expected = new ArrayList<>(deque);
+
+        deque.set(500, -1);
+        deque.removeFirst();
+        deque.addFirst(-2);
+        deque.rotate(77);
+        deque.reverse();
+        deque.removeIf(x -> x % 3 == 0);
+        deque.add(200, -3);
+        deque.clear();
+
+        assertEquals(empty.size(), 0);
+        assertEquals(small.toString(), "[1, 2]");
+        assertEquals(large, expected);
+        assertEquals(large.get(999), Integer.valueOf(1000));
+    }
+
+    @Test
+    public void testSearchNulls() {
+        BlockDeque<Integer> deque = new BlockDeque<>();
+        for (int i = 0; i < 300; i++) {
+            deque.addLast(i % 100 == 50 ? null : i % 100);
+        }
+        assertEquals(deque.indexOf(null), 50);
+        assertEquals(deque.lastIndexOf(null), 250);
+        assertEquals(deque.count(null), 3);
+        assertEquals(deque.contains(null), true);
+        assertEquals(deque.indexOf(7, 10, 300), 107);
+        assertEquals(deque.lastIndexOf(7), 207);
+        assertEquals(deque.lastIndexOf(-1), -1);
+        assertEquals(deque.count(99), 3);
+        assertEquals(deque.removeLastOccurrence(null), true);
+        assertEquals(deque.remove((Object)null), true);
+        assertEquals(deque.indexOf(null), 149);
+        assertEquals(deque.size(), 298);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSearchMutation() {
+        BlockDeque<Object> deque = new BlockDeque<>();
+        for (int i = 0; i < 10; i++) {
+            deque.addLast(i);
+        }
+        deque.contains(new Object() {
+            @Override
+            public boolean equals(Object o) {
+                deque.addLast(o);
+                return false;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
+        });
+    }
+
+    @Test
+    public void testListIterator() {
+        BlockDeque<Integer> deque = new BlockDeque<>(8, null);
+        for (int i = 0; i < 100; i++) {
+            deque.addLast(i);
+        }
+        ListIterator<Integer> it = deque.listIterator(50);
+        assertEquals(it.previous(), Integer.valueOf(49));
+        assertEquals(it.next(), Integer.valueOf(49));
+        assertEquals(it.next(), Integer.valueOf(50));
+        it.set(-50);
+        it.remove();
+        it.add(1001);
+        assertEquals(it.nextIndex(), 51);
+        assertEquals(it.next(), Integer.valueOf(51));
+        while (it.hasNext()) {
+            it.next();
+        }
+        it.remove();
+        while (it.hasPrevious()) {
+            if (it.previous() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(deque.size(), 50);
+        assertEquals(deque.get(24), Integer.valueOf(49));
+        assertEquals(deque.get(25), Integer.valueOf(1001));
+        assertEquals(deque.getLast(), Integer.valueOf(97));
+    }
+
+    @Test
+    public void testSubList() {
+        BlockDeque<Integer> deque = new BlockDeque<>(8, null);
+        for (int i = 0; i < 100; i++) {
+            deque.addLast(i);
+        }
+        List<Integer> sub = deque.subList(10, 90);
+        assertEquals(sub.size(), 80);
+        assertEquals(sub.get(0), Integer.valueOf(10));
+        assertEquals(sub.indexOf(50), 40);
+        assertEquals(sub.indexOf(5), -1);
+        List<Integer> inner = sub.subList(30, 40);
+        inner.clear();
+        inner.add(-1);
+        assertEquals(inner.size(), 1);
+        assertEquals(sub.size(), 71);
+        assertEquals(deque.size(), 91);
+        assertEquals(deque.get(40), Integer.valueOf(-1));
+        assertEquals(deque.get(41), Integer.valueOf(50));
+        sub.subList(0, 20).clear();
+        assertEquals(deque.subList(8, 12).toString(), "[8, 9, 30, 31]");
+        deque.addFirst(-2);
+        try {
+            sub.size();
+            throw new AssertionError("sublist survived an outside change");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        List<Integer> list = new ArrayList<>();
+        BlockDeque<Integer> deque = new BlockDeque<>(8, null);
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+            deque.addLast(i);
+        }
+        deque.addFirst(null);
+        list.add(0, null);
+        assertEquals(deque.equals(list), true);
+        assertEquals(list.equals(deque), true);
+        assertEquals(deque.hashCode(), list.hashCode());
+
+        /* The same items in blocks of another length and alignment */
+        BlockDeque<Integer> other = new BlockDeque<>(list, Integer.MAX_VALUE, 16, null);
+        other.rotate(5);
+        other.rotate(-5);
+        assertEquals(deque.equals(other), true);
+        BlockDeque<Integer> clone = deque.clone();
+        assertEquals(deque.equals(clone), true);
+        clone.set(50, -1);
+        assertEquals(deque.equals(clone), false);
+        list.set(50, -1);
+        assertEquals(deque.equals(list), false);
+        assertEquals(deque.equals(list.subList(0, 100)), false);
+        assertEquals(deque.equals(new BlockDeque<>()), false);
+    }
+
+    @Test
+    public void testToArrayAndString() {
+        BlockDeque<Integer> deque = new BlockDeque<>(4, null);
+        assertEquals(deque.toString(), "[]");
+        assertEquals(deque.toArray().length, 0);
+        for (int i = 0; i < 10; i++) {
+            deque.addLast(i);
+        }
+        deque.removeFirst();
+        assertEquals(Arrays.toString(deque.toArray()), "[1, 2, 3, 4, 5, 6, 7, 8, 9]");
+        Integer[] big = new Integer[12];
+        Arrays.fill(big, -1);
+        assertEquals(deque.toArray(big) == big, true);
+        assertEquals(Arrays.toString(big), "[1, 2, 3, 4, 5, 6, 7, 8, 9, null, -1, -1]");
+        Integer[] small = deque.toArray(new Integer[0]);
+        assertEquals(small.length, 9);
+        assertEquals(small[8], Integer.valueOf(9));
+        assertEquals(deque.toString(), "[1, 2, 3, 4, 5, 6, 7, 8, 9]");
+        BlockDeque<Object> self = new BlockDeque<>();
+        self.add(self);
+        assertEquals(self.toString(), "[(this Collection)]");
+    }
+
+    @Test
+    public void testAddAllAcrossBlockLengths() {
+        int[][] lengths = {{16, 64}, {64, 16}};
+        for (int[] pair : lengths) {
+            BlockDeque<Integer> src = new BlockDeque<>(pair[0], null);
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                src.addLast(i);
+            }
+            /* Start the source partway into a block */
+            for (int i = 0; i < 5; i++) {
+                src.removeFirst();
+            }
+            BlockDeque<Integer> dest = new BlockDeque<>(pair[1], null);
+            dest.addLast(-1);
+            dest.addAll(src);
+            expected.add(-1);
+            expected.addAll(src);
+            assertEquals(dest, expected);
+            dest.addAllFirst(src);
+            for (int i = 5; i < 200; i++) {
+                expected.add(0, i);
+            }
+            assertEquals(dest, expected);
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class BlockPoolTest {
+    public void fillAndRecycle(BlockPool pool) {
+        BlockDeque<Integer> deque = new BlockDeque<>(pool);
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(deque.removeFirst(), Integer.valueOf(i));
+        }
+        deque.recycle();
+    }
+
+    @Test
+    public void testThreadLocal() {
+        BlockPool pool = BlockPool.threadLocal(32);
+        fillAndRecycle(pool);
+        long misses = pool.getMisses();
+        fillAndRecycle(pool);
+        assertEquals(pool.getMisses(), misses);
+        assertEquals(pool.getDiscards(), 0);
+        assertEquals(pool.getHits() + pool.getMisses(), pool.getReleases());
+    }
+
+    @Test
+    public void testStriped() {
+        BlockPool pool = BlockPool.striped(4, 4);
+        fillAndRecycle(pool);
+        fillAndRecycle(pool);
+        assertEquals(pool.getHits() + pool.getMisses(), pool.getReleases() + pool.getDiscards());
+        pool.clear();
+        pool.resetCounters();
+        BlockDeque<Integer> deque = new BlockDeque<>(pool);
+        assertEquals(pool.getMisses(), 0);
+        for (int i = 0; i < 40; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(pool.getMisses(), 1);
+        deque.recycle();
+        for (int i = 0; i < 40; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(pool.getHits(), 1);
+    }
+
+    @Test
+    public void testMixedDeques() {
+        BlockPool pool = BlockPool.threadLocal(8);
+        BlockDeque<Integer> a = new BlockDeque<>(pool);
+        BlockDeque<Integer> b = new BlockDeque<>(pool);
+        ArrayDeque<Integer> expected = new ArrayDeque<>();
+        for (int i = 0; i < 500; i++) {
+            a.addLast(i);
+            b.addFirst(i);
+            expected.addFirst(i);
+            if (i % 3 == 0) {
+                a.clear();
+                b.removeLast();
+                expected.removeLast();
+            }
+        }
+        assertEquals(new ArrayList<>(b), new ArrayList<>(expected));
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class BlockingBlockDequeTest {
+    @Test
+    public void testBlockPolicy() throws InterruptedException {
+        BlockingBlockDeque<Integer> deque = new BlockingBlockDeque<>(3);
+        assertEquals(deque.offer(1), true);
+        assertEquals(deque.offer(2), true);
+        assertEquals(deque.offerFirst(0), true);
+        assertEquals(deque.offer(3), false);
+        assertEquals(deque.offer(3, 10, TimeUnit.MILLISECONDS), false);
+        assertEquals(deque.remainingCapacity(), 0);
+        assertEquals(deque.toString(), "[0, 1, 2]");
+    }
+
+    @Test
+    public void testDropOldestPolicy() throws InterruptedException {
+        BlockingBlockDeque<Integer> deque = new BlockingBlockDeque<>(3, BlockingBlockDeque.Policy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++) {
+            deque.put(i);
+        }
+        assertEquals(deque.toString(), "[3, 4, 5]");
+        deque.putFirst(9);
+        assertEquals(deque.toString(), "[9, 3, 4]");
+    }
+
+    @Test
+    public void testPollTimeout() throws InterruptedException {
+        BlockingBlockDeque<Integer> deque = new BlockingBlockDeque<>();
+        assertEquals(deque.poll(10, TimeUnit.MILLISECONDS), null);
+        deque.add(1);
+        assertEquals(deque.pollLast(10, TimeUnit.MILLISECONDS), Integer.valueOf(1));
+    }
+
+    @Test
+    public void testDrainTo() {
+        BlockingBlockDeque<Integer> deque = new BlockingBlockDeque<>(Arrays.asList(1, 2, 3, 4, 5, 6));
+        List<Integer> list = new ArrayList<>();
+        assertEquals(deque.drainTo(list, 4), 4);
+        assertEquals(list.toString(), "[1, 2, 3, 4]");
+        assertEquals(deque.drainTo(list), 2);
+        assertEquals(deque.size(), 0);
+    }
+
+    @Test(timeout = 10000)
+    public void testDrainToFailure() throws InterruptedException {
+        BlockingBlockDeque<Integer> deque = new BlockingBlockDeque<>(2);
+        deque.add(1);
+        deque.add(2);
+        List<Integer> list = new ArrayList<Integer>() {
+            @Override
+            public boolean add(Integer item) {
+                if (size() == 1) {
+                    throw new IllegalStateException("full");
+                }
+                return super.add(item);
+            }
+        };
+        Thread producer = new Thread(() -> {
+            try {
+                deque.put(3);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+        try {
+            deque.drainTo(list);
+        } catch (IllegalStateException e) {
+        }
+        /* The one item drained still wakes the producer */
+        producer.join();
+        assertEquals(list.toString(), "[1]");
+        assertEquals(deque.toString(), "[2, 3]");
+    }
+
+    @Test(timeout = 10000)
+    public void testIterRemove() throws InterruptedException {
+        BlockingBlockDeque<Integer> deque = new BlockingBlockDeque<>(6);
+        for (int i = 0; i < 5; i++) {
+            deque.add(i);
+        }
+        Iterator<Integer> it = deque.iterator();
+        assertEquals(it.next(), Integer.valueOf(0));
+        /* The iterator works on a snapshot, so this doesn't upset it */
+        deque.addFirst(-1);
+        assertEquals(it.next(), Integer.valueOf(1));
+        it.remove();
+        assertEquals(deque.toString(), "[-1, 0, 2, 3, 4]");
+        try {
+            it.remove();
+        } catch (IllegalStateException e) {
+        }
+        deque.add(5);
+
+        /* Removing frees room for a blocked producer */
+        Thread producer = new Thread(() -> {
+            try {
+                deque.put(6);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        while (producer.getState() != Thread.State.WAITING) {
+            Thread.yield();
+        }
+        it = deque.descendingIterator();
+        assertEquals(it.next(), Integer.valueOf(5));
+        it.remove();
+        producer.join();
+        assertEquals(deque.toString(), "[-1, 0, 2, 3, 4, 6]");
+
+        deque.removeIf(i -> i % 2 == 0);
+        assertEquals(deque.toString(), "[-1, 3]");
+    }
+
+    @Test
+    public void testPutTake() throws InterruptedException {
+        BlockingBlockDeque<Integer> deque = new BlockingBlockDeque<>(16);
+        int count = 100000;
+        AtomicLong sum = new AtomicLong();
+        Thread consumer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    sum.addAndGet(deque.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < count; i++) {
+            deque.put(i);
+        }
+        consumer.join();
+        assertEquals(sum.get(), (long)count * (count - 1) / 2);
+        assertEquals(deque.size(), 0);
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class ConcurrentBlockDequeTest {
+    public ConcurrentBlockDeque<Integer> initTestDeque() {
+        return new ConcurrentBlockDeque<>(Arrays.asList(1, 2, 3, 4, 5, 6));
+    }
+
+    @Test
+    public void testAdd() {
+        ConcurrentBlockDeque<Integer> deque = new ConcurrentBlockDeque<Integer>() {{
+            addLast(2);
+            addLast(3);
+            addFirst(1);
+        }};
+        assertEquals(deque.toString(), "[1, 2, 3]");
+    }
+
+    @Test
+    public void testAddWithMax() {
+        ConcurrentBlockDeque<Integer> deque = new ConcurrentBlockDeque<>(Arrays.asList(1, 2, 3, 4, 5, 6), 4);
+        assertEquals(deque.toString(), "[3, 4, 5, 6]");
+        deque.addFirst(7);
+        assertEquals(deque.toString(), "[7, 3, 4, 5]");
+    }
+
+    @Test
+    public void testManyBlocks() {
+        ConcurrentBlockDeque<Integer> deque = new ConcurrentBlockDeque<>();
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        for (int i = 0; i < 500; i++) {
+            assertEquals(deque.removeFirst(), Integer.valueOf(i));
+        }
+        for (int i = 499; i >= 0; i--) {
+            deque.addFirst(i);
+        }
+        for (int i = 999; i >= 0; i--) {
+            assertEquals(deque.removeLast(), Integer.valueOf(i));
+        }
+        assertEquals(deque.pollFirst(), null);
+        assertEquals(deque.pollLast(), null);
+    }
+
+    @Test
+    public void testRemoveValue() {
+        ConcurrentBlockDeque<Integer> deque = initTestDeque();
+        deque.addLast(4);
+        assertEquals(deque.removeFirstOccurrence(4), true);
+        assertEquals(deque.removeLastOccurrence(1), true);
+        assertEquals(deque.removeLastOccurrence(1), false);
+        assertEquals(deque.toString(), "[2, 3, 5, 6, 4]");
+        assertEquals(deque.size(), 5);
+        assertEquals(deque.removeFirst(), Integer.valueOf(2));
+        assertEquals(deque.peekLast(), Integer.valueOf(4));
+    }
+
+    @Test
+    public void testIterDuringMutation() {
+        ConcurrentBlockDeque<Integer> deque = new ConcurrentBlockDeque<>();
+        for (int i = 0; i < 200; i++) {
+            deque.addLast(i);
+        }
+        List<Integer> list = new ArrayList<>();
+        Iterator<Integer> it = deque.iterator();
+        for (int i = 0; i < 100; i++) {
+            list.add(it.next());
+            deque.removeFirst();
+            deque.addLast(200 + i);
+        }
+        while (it.hasNext()) {
+            list.add(it.next());
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(list.get(i), Integer.valueOf(i));
+        }
+    }
+
+    @Test
+    public void testReverseIter() {
+        ConcurrentBlockDeque<Integer> deque = initTestDeque();
+        List<Integer> list = new ArrayList<>();
+        Iterator<Integer> revIter = deque.descendingIterator();
+        while (revIter.hasNext()) {
+            list.add(revIter.next());
+        }
+        assertEquals(list.toString(), "[6, 5, 4, 3, 2, 1]");
+    }
+
+    @Test
+    public void testProducerConsumer() throws InterruptedException {
+        ConcurrentBlockDeque<Integer> deque = new ConcurrentBlockDeque<>();
+        int perThread = 100000;
+        AtomicLong sum = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        threads[0] = new Thread(() -> {
+            for (int i = 0; i < perThread; i++) {
+                deque.addLast(i);
+            }
+        });
+        threads[1] = new Thread(() -> {
+            for (int i = 0; i < perThread; i++) {
+                deque.addFirst(i);
+            }
+        });
+        for (int t = 2; t < 4; t++) {
+            boolean first = t == 2;
+            threads[t] = new Thread(() -> {
+                for (int taken = 0; taken < perThread;) {
+                    Integer item = first ? deque.pollFirst() : deque.pollLast();
+                    if (item != null) {
+                        sum.addAndGet(item);
+                        taken++;
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(deque.size(), 0);
+        assertEquals(sum.get(), 2L * perThread * (perThread - 1) / 2);
+    }
+
+    @Test
+    public void testIterRemove() {
+        ConcurrentBlockDeque<Integer> deque = new ConcurrentBlockDeque<>();
+        for (int i = 0; i < 200; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(deque.removeIf(i -> i % 3 == 0), true);
+        assertEquals(deque.size(), 133);
+        assertEquals(deque.removeAll(Arrays.asList(1, 199)), true);
+        assertEquals(deque.retainAll(Arrays.asList(2, 4, 5, 197)), true);
+        assertEquals(deque.toString(), "[2, 4, 5, 197]");
+        Iterator<Integer> it = deque.descendingIterator();
+        it.next();
+        it.remove();
+        /* Already gone, so removing it through the iterator does nothing */
+        it.next();
+        assertEquals(deque.removeLast(), Integer.valueOf(5));
+        it.remove();
+        assertEquals(deque.toString(), "[2, 4]");
+        assertEquals(deque.size(), 2);
+        assertEquals(deque.removeFirst(), Integer.valueOf(2));
+        assertEquals(deque.removeFirst(), Integer.valueOf(4));
+        assertEquals(deque.pollFirst(), null);
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/* DoubleBlockDeque is generated from the same template as IntBlockDeque, so
+   this only covers what differs: items compare like Double.equals(), so NaN
+   equals itself and 0.0 doesn't equal -0.0. */
+public class DoubleBlockDequeTest {
+    @Test
+    public void testSearch() {
+        DoubleBlockDeque deque = new DoubleBlockDeque(new double[] {1.5, Double.NaN, -0.0, 0.0, Double.NaN});
+        assertEquals(deque.toString(), "[1.5, NaN, -0.0, 0.0, NaN]");
+        assertEquals(deque.count(Double.NaN), 2);
+        assertEquals(deque.indexOf(Double.NaN), 1);
+        assertEquals(deque.indexOf(Double.NaN, 2), 4);
+        assertEquals(deque.indexOf(0.0), 3);
+        assertEquals(deque.indexOf(-0.0), 2);
+        assertEquals(deque.contains(1.0), false);
+    }
+
+    @Test
+    public void testEquals() {
+        DoubleBlockDeque deque = new DoubleBlockDeque(new double[] {Double.NaN, 0.0});
+        assertEquals(deque, new DoubleBlockDeque(new double[] {Double.NaN, 0.0}));
+        assertEquals(deque.equals(new DoubleBlockDeque(new double[] {Double.NaN, -0.0})), false);
+        assertEquals(deque.hashCode(), Arrays.asList(Double.NaN, 0.0).hashCode());
+    }
+
+    @Test
+    public void testGetSet() {
+        DoubleBlockDeque deque = new DoubleBlockDeque(new double[] {0.25, -0.0});
+        assertEquals(deque.get(1), -0.0, 0);
+        assertEquals(Double.doubleToLongBits(deque.set(1, 0.0)), Double.doubleToLongBits(-0.0));
+        assertEquals(deque.getFirst(), 0.25, 0);
+    }
+}
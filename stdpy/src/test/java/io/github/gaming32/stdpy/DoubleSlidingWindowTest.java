@@ -0,0 +1,80 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DoubleSlidingWindowTest {
+    @Test
+    public void testAggregates() {
+        DoubleSlidingWindow window = new DoubleSlidingWindow(3);
+        window.addLast(0.5);
+        window.addLast(-2);
+        window.addLast(1.5);
+        assertEquals(window.getSum(), 0.0, 0);
+        assertEquals(window.getMin(), -2, 0);
+        assertEquals(window.getMax(), 1.5, 0);
+        window.addLast(1e300);
+        window.addLast(1);
+        window.addLast(-1e300);
+        /* The large values don't swallow the small one */
+        assertEquals(window.getSum(), 1, 0);
+    }
+
+    @Test
+    public void testNonFinite() {
+        DoubleSlidingWindow window = new DoubleSlidingWindow(2);
+        window.addLast(Double.POSITIVE_INFINITY);
+        window.addLast(1);
+        assertEquals(window.getSum(), Double.POSITIVE_INFINITY, 0);
+        window.addLast(Double.NaN);
+        assertEquals(window.getSum(), Double.NaN, 0);
+        assertEquals(window.getMax(), Double.NaN, 0);
+        assertEquals(window.getMin(), 1, 0);
+        window.addLast(2);
+        window.addLast(3);
+        assertEquals(window.getSum(), 5, 0);
+        assertEquals(window.getMax(), 3, 0);
+    }
+
+    @Test
+    public void testOverflow() {
+        DoubleSlidingWindow window = new DoubleSlidingWindow(3);
+        window.addLast(Double.MAX_VALUE);
+        window.addLast(Double.MAX_VALUE);
+        assertEquals(window.getSum(), Double.POSITIVE_INFINITY, 0);
+        window.addLast(-Double.MAX_VALUE);
+        assertEquals(window.getSum(), Double.MAX_VALUE, 0);
+        window.addLast(1);
+        assertEquals(window.getSum(), 1, 0);
+        window.addLast(2.5);
+        assertEquals(window.getSum(), -Double.MAX_VALUE, 0);
+        for (int i = 0; i < 3; i++) {
+            window.addLast(0.25);
+        }
+        assertEquals(window.getSum(), 0.75, 0);
+        assertEquals(window.getAverage(), 0.25, 0);
+    }
+
+    @Test
+    public void testRandom() {
+        DoubleSlidingWindow window = new DoubleSlidingWindow(64);
+        double[] values = new double[5000];
+        Random random = new Random(4);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * 1000;
+            window.addLast(values[i]);
+            double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int j = Math.max(0, i - 63); j <= i; j++) {
+                sum += values[j];
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+            }
+            assertEquals(window.getSum(), sum, 1e-6);
+            assertEquals(window.getMin(), min, 0);
+            assertEquals(window.getMax(), max, 0);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DurableBlockDequeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static byte[] job(int value) {
+        /* Jobs of varying length, including empty payloads */
+        ByteBuffer job = ByteBuffer.allocate(4 + (value & 15)).putInt(value);
+        while (job.hasRemaining()) {
+            job.put((byte)value);
+        }
+        return job.array();
+    }
+
+    public static int value(byte[] job) {
+        int value = ByteBuffer.wrap(job).getInt();
+        assertArrayEquals(job, job(value));
+        return value;
+    }
+
+    public static Path journal(Path dir) throws IOException {
+        return Files.list(dir)
+            .filter(p -> p.getFileName().toString().startsWith("journal-"))
+            .findFirst().get();
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        DurableBlockDeque deque = new DurableBlockDeque(dir);
+        for (int i = 0; i < 10000; i++) {
+            deque.addLast(job(i));
+        }
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(value(deque.removeFirst()), i);
+        }
+        for (int i = 2999; i >= 1000; i--) {
+            deque.addFirst(job(i));
+        }
+        assertEquals(value(deque.removeLast()), 9999);
+        deque.close();
+
+        deque = new DurableBlockDeque(dir);
+        assertEquals(deque.size(), 8999);
+        for (int i = 0; i < 8999; i += 17) {
+            assertEquals(value(deque.get(i)), i + 1000);
+        }
+        deque.clear();
+        deque.addLast(job(7));
+        deque.close();
+
+        deque = new DurableBlockDeque(dir);
+        assertEquals(deque.size(), 1);
+        assertEquals(value(deque.peekFirst()), 7);
+        deque.close();
+    }
+
+    @Test
+    public void testRecoverJournal() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        DurableBlockDeque deque = new DurableBlockDeque(dir);
+        for (int i = 0; i < 5000; i++) {
+            deque.addLast(job(i));
+        }
+        deque.checkpoint();
+        for (int i = 0; i < 100; i++) {
+            deque.removeFirst();
+            deque.addFirst(job(-i));
+            deque.addLast(job(5000 + i));
+        }
+        deque.sync();
+        /* Operations after the last sync are lost, like after a crash */
+        deque.addLast(job(-1));
+
+        DurableBlockDeque recovered = new DurableBlockDeque(dir);
+        assertEquals(recovered.size(), 5100);
+        assertEquals(value(recovered.peekFirst()), -99);
+        assertEquals(value(recovered.peekLast()), 5099);
+        assertEquals(value(recovered.get(100)), 100);
+        recovered.close();
+    }
+
+    @Test
+    public void testTornJournal() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        DurableBlockDeque deque = new DurableBlockDeque(dir, 1, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            deque.addLast(job(i));
+        }
+        Path journal = journal(dir);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        DurableBlockDeque recovered = new DurableBlockDeque(dir);
+        assertEquals(recovered.size(), 9);
+        recovered.addLast(job(42));
+        recovered.sync();
+        recovered = new DurableBlockDeque(dir);
+        assertEquals(recovered.size(), 10);
+        assertEquals(value(recovered.pollLast()), 42);
+        assertEquals(value(recovered.pollLast()), 8);
+        recovered.close();
+    }
+
+    @Test
+    public void testAutoCheckpoint() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        DurableBlockDeque deque = new DurableBlockDeque(dir, 100, 4096);
+        for (int i = 0; i < 20000; i++) {
+            deque.addLast(job(i));
+            if (i % 2 == 1) {
+                assertEquals(value(deque.pollFirst()), i / 2);
+            }
+        }
+        deque.sync();
+        assert Files.size(journal(dir)) < 8192;
+
+        DurableBlockDeque recovered = new DurableBlockDeque(dir);
+        assertEquals(recovered.size(), 10000);
+        for (int i = 10000; i < 20000; i++) {
+            assertEquals(value(recovered.pollFirst()), i);
+        }
+        assertNull(recovered.pollFirst());
+        recovered.close();
+    }
+
+    @Test
+    public void testCorruptLength() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        DurableBlockDeque deque = new DurableBlockDeque(dir, 1, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            deque.addLast(job(i));
+        }
+        /* A record header claiming far more bytes than the file has */
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(Integer.MAX_VALUE).putInt(0).putInt(0);
+        header.flip();
+        try (FileChannel channel = FileChannel.open(journal(dir), StandardOpenOption.APPEND)) {
+            channel.write(header);
+        }
+
+        DurableBlockDeque recovered = new DurableBlockDeque(dir);
+        assertEquals(recovered.size(), 10);
+        recovered.addLast(job(10));
+        recovered.sync();
+        recovered = new DurableBlockDeque(dir);
+        assertEquals(recovered.size(), 11);
+        assertEquals(value(recovered.peekLast()), 10);
+        recovered.close();
+    }
+
+    @Test
+    public void testFailedSync() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        DurableBlockDeque deque = new DurableBlockDeque(dir);
+        for (int i = 0; i < 3; i++) {
+            deque.addLast(job(i));
+        }
+        deque.sync();
+        deque.addLast(job(3));
+        /* Neither the write nor cutting it back off can succeed */
+        deque.journal.close();
+        try {
+            deque.sync();
+            throw new AssertionError("sync to a closed journal succeeded");
+        } catch (IOException e) {
+        }
+        try {
+            deque.addLast(job(4));
+            throw new AssertionError("a failed deque accepted an item");
+        } catch (IllegalStateException e) {
+        }
+        deque.close();
+
+        DurableBlockDeque recovered = new DurableBlockDeque(dir);
+        assertEquals(recovered.size(), 3);
+        assertEquals(value(recovered.peekLast()), 2);
+        recovered.close();
+    }
+
+    @Test
+    public void testClosed() throws IOException {
+        DurableBlockDeque deque = new DurableBlockDeque(folder.newFolder().toPath());
+        try {
+            deque.addLast(null);
+            throw new AssertionError("null item accepted");
+        } catch (NullPointerException e) {
+        }
+        deque.close();
+        try {
+            deque.addFirst(null);
+            throw new AssertionError("closed deque accepted an item");
+        } catch (IllegalStateException e) {
+        }
+    }
+}
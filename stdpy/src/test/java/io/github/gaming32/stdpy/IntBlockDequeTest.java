@@ -0,0 +1,162 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.PrimitiveIterator;
+
+import org.junit.Test;
+
+public class IntBlockDequeTest {
+    public IntBlockDeque initTestDeque() {
+        return new IntBlockDeque(new int[] {1, 2, 3, 4, 5, 6});
+    }
+
+    @Test
+    public void testAdd() {
+        IntBlockDeque deque = new IntBlockDeque() {{
+            addLast(1);
+            addLast(2);
+            addLast(3);
+            addFirst(0);
+        }};
+        assertEquals(deque.toString(), "[0, 1, 2, 3]");
+    }
+
+    @Test
+    public void testAddAllFirst() {
+        IntBlockDeque deque = new IntBlockDeque() {{
+            addAllFirst(new int[] {1, 2, 3, 4, 5, 6});
+        }};
+        assertEquals(deque.toString(), "[6, 5, 4, 3, 2, 1]");
+    }
+
+    @Test
+    public void testAddWithMax() {
+        IntBlockDeque deque = new IntBlockDeque(new int[] {1, 2, 3, 4, 5, 6}, 4);
+        assertEquals(deque.toString(), "[3, 4, 5, 6]");
+        deque.addFirst(7);
+        assertEquals(deque.toString(), "[7, 3, 4, 5]");
+    }
+
+    @Test
+    public void testGetSet() {
+        IntBlockDeque deque = initTestDeque();
+        assertEquals(deque.get(3), 4, 0);
+        assertEquals(deque.set(3, 10), 4, 0);
+        assertEquals(deque.get(3), 10, 0);
+    }
+
+    @Test
+    public void testRotate() {
+        IntBlockDeque deque = initTestDeque();
+        deque.rotate(2);
+        assertEquals(deque.toString(), "[5, 6, 1, 2, 3, 4]");
+        deque.rotate(-4);
+        assertEquals(deque.toString(), "[3, 4, 5, 6, 1, 2]");
+    }
+
+    @Test
+    public void testReverse() {
+        IntBlockDeque deque = initTestDeque();
+        deque.reverse();
+        assertEquals(deque.toString(), "[6, 5, 4, 3, 2, 1]");
+    }
+
+    @Test
+    public void testSearch() {
+        IntBlockDeque deque = new IntBlockDeque(new int[] {1, 2, 3, 2, 1});
+        assertEquals(deque.count(2), 2);
+        assertEquals(deque.indexOf(2), 1);
+        assertEquals(deque.indexOf(2, 2), 3);
+        assertEquals(deque.indexOf(4), -1);
+    }
+
+    @Test
+    public void testManyBlocks() {
+        IntBlockDeque deque = new IntBlockDeque();
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        for (int i = 0; i < 500; i++) {
+            assertEquals(deque.removeFirst(), i, 0);
+        }
+        for (int i = 499; i >= 0; i--) {
+            deque.addFirst(i);
+        }
+        assertEquals(deque.size(), 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(deque.get(i), i, 0);
+        }
+        deque.rotate(300);
+        assertEquals(deque.getFirst(), 700, 0);
+        assertEquals(deque.getLast(), 699, 0);
+    }
+
+    @Test
+    public void testBlockIndex() {
+        IntBlockDeque deque = new IntBlockDeque();
+        for (int i = 0; i < 2000; i++) {
+            deque.addLast(i);
+        }
+        for (int i = -1; i >= -1000; i--) {
+            deque.addFirst(i);
+        }
+        for (int i = 0; i < 300; i++) {
+            deque.removeFirst();
+            deque.removeLast();
+        }
+        deque.rotate(700);
+        deque.rotate(-250);
+        /* -700 to 1699, rotated right by 450 */
+        assertEquals(deque.size(), 2400);
+        for (int i = 0; i < 2400; i++) {
+            int expected = (i + 1950) % 2400 - 700;
+            assertEquals(deque.get(i), expected);
+            assertEquals(deque.set(i, expected * 2), expected);
+        }
+        assertEquals(deque.indexOf(2 * -700, 100), 450);
+        assertEquals(deque.indexOf(2 * -700, 451), -1);
+        deque.clear();
+        deque.addLast(5);
+        assertEquals(deque.get(0), 5);
+    }
+
+    @Test
+    public void testIter() {
+        IntBlockDeque deque = initTestDeque();
+        StringBuilder sb = new StringBuilder();
+        PrimitiveIterator.OfInt it = deque.iterator();
+        while (it.hasNext()) {
+            sb.append(it.nextInt()).append(' ');
+        }
+        assertEquals(sb.toString(), "1 2 3 4 5 6 ");
+    }
+
+    @Test
+    public void testReverseIter() {
+        IntBlockDeque deque = initTestDeque();
+        StringBuilder sb = new StringBuilder();
+        PrimitiveIterator.OfInt it = deque.descendingIterator();
+        while (it.hasNext()) {
+            sb.append(it.nextInt()).append(' ');
+        }
+        assertEquals(sb.toString(), "6 5 4 3 2 1 ");
+    }
+
+    @Test
+    public void testForEach() {
+        IntBlockDeque deque = initTestDeque();
+        StringBuilder sb = new StringBuilder();
+        deque.forEach(item -> sb.append(item).append(' '));
+        assertEquals(sb.toString(), "1 2 3 4 5 6 ");
+    }
+
+    @Test
+    public void testClear() {
+        IntBlockDeque deque = initTestDeque();
+        deque.clear();
+        assertEquals(deque.size(), 0);
+        deque.addLast(1);
+        assertEquals(deque.toString(), "[1]");
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/* LongBlockDeque is generated from the same template as IntBlockDeque, so
+   this only covers what differs: values outside the int range. */
+public class LongBlockDequeTest {
+    @Test
+    public void testWideValues() {
+        long[] values = {Long.MIN_VALUE, -1L << 40, 0, 1L << 32, Long.MAX_VALUE};
+        LongBlockDeque deque = new LongBlockDeque(values);
+        assertEquals(deque.toString(), Arrays.toString(values));
+        assertEquals(deque.get(3), 1L << 32);
+        /* These would be equal if truncated to an int */
+        assertEquals(deque.indexOf(0L), 2);
+        assertEquals(deque.count(1L << 32), 1);
+        assertEquals(deque.indexOf(1L << 33), -1);
+        assertEquals(deque.set(4, Long.MAX_VALUE - 1), Long.MAX_VALUE);
+        assertEquals(deque.getLast(), Long.MAX_VALUE - 1);
+        assertEquals(deque.removeFirst(), Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testHashCode() {
+        LongBlockDeque deque = new LongBlockDeque(new long[] {1L << 32, -1});
+        assertEquals(deque.hashCode(), Arrays.asList(1L << 32, -1L).hashCode());
+        assertEquals(deque, new LongBlockDeque(new long[] {1L << 32, -1}));
+        assertEquals(deque.equals(new LongBlockDeque(new long[] {0, -1})), false);
+    }
+}
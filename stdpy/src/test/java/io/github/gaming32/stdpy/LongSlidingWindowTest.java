@@ -0,0 +1,46 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongSlidingWindowTest {
+    @Test
+    public void testAggregates() {
+        LongSlidingWindow window = new LongSlidingWindow(3);
+        window.addLast(5);
+        window.addLast(1);
+        window.addLast(3);
+        window.addLast(4);
+        assertEquals(window.toString(), "[1, 3, 4]");
+        assertEquals(window.getSum(), 8);
+        assertEquals(window.getMin(), 1);
+        assertEquals(window.getMax(), 4);
+        assertEquals(window.getAverage(), 8 / 3.0, 1e-9);
+        assertEquals(window.removeFirst(), 1);
+        assertEquals(window.getMin(), 3);
+    }
+
+    @Test
+    public void testRandom() {
+        LongSlidingWindow window = new LongSlidingWindow(100);
+        long[] values = new long[10000];
+        Random random = new Random(3);
+        for (int i = 0; i < values.length; i++) {
+            /* Few distinct values, so there are plenty of duplicates */
+            values[i] = random.nextInt(20) - 10;
+            window.addLast(values[i]);
+            long sum = 0, min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+            for (int j = Math.max(0, i - 99); j <= i; j++) {
+                sum += values[j];
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+            }
+            assertEquals(window.getSum(), sum);
+            assertEquals(window.getMin(), min);
+            assertEquals(window.getMax(), max);
+        }
+    }
+}
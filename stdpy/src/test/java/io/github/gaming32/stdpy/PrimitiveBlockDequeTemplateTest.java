@@ -0,0 +1,60 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+/* IntBlockDeque, LongBlockDeque and DoubleBlockDeque are generated from one
+   template. Run main() from the stdpy directory to regenerate them after
+   editing it; the test fails if they have drifted apart. */
+public class PrimitiveBlockDequeTemplateTest {
+    public static final Path TEMPLATE = Paths.get("src/main/templates/PrimitiveBlockDeque.java.template");
+    public static final Path SOURCES = Paths.get("src/main/java/io/github/gaming32/stdpy");
+
+    /* $Type$, $type$, $Boxed$, the article for the doc comment, and $eq$,
+       which compares a and b */
+    public static final String[][] TYPES = {
+        {"Int", "int", "Integer", "An", "a == b"},
+        {"Long", "long", "Long", "A", "a == b"},
+        /* Like Double.equals(): NaN equals itself, and 0.0 doesn't equal -0.0 */
+        {"Double", "double", "Double", "A", "Double.doubleToLongBits(a) == Double.doubleToLongBits(b)"},
+    };
+
+    public static String generate(String template, String[] type) {
+        return template
+            .replace("$Type$", type[0])
+            .replace("$type$", type[1])
+            .replace("$Boxed$", type[2])
+            .replace("$A$", type[3])
+            .replace("$eq$", type[4]);
+    }
+
+    public static Path source(String[] type) {
+        return SOURCES.resolve(type[0] + "BlockDeque.java");
+    }
+
+    public static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String template = read(TEMPLATE);
+        for (String[] type : TYPES) {
+            Files.write(source(type), generate(template, type).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testGenerated() throws IOException {
+        String template = read(TEMPLATE);
+        for (String[] type : TYPES) {
+            assertEquals(source(type) + " differs from the template", generate(template, type), read(source(type)));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordBlockDequeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static byte[] record(int value) {
+        return ByteBuffer.allocate(8).putInt(value).putInt(~value).array();
+    }
+
+    public static int value(byte[] record) {
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        int value = buf.getInt();
+        assertEquals(buf.getInt(), ~value);
+        return value;
+    }
+
+    public void checkDeque(RecordBlockDeque deque) {
+        byte[] rec = new byte[8];
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(record(i), 0);
+        }
+        for (int i = 0; i < 500; i++) {
+            deque.removeFirst(rec, 0);
+            assertEquals(value(rec), i);
+        }
+        for (int i = 499; i >= 0; i--) {
+            deque.addFirst(ByteBuffer.wrap(record(i)));
+        }
+        assertEquals(deque.size(), 1000);
+        for (int i = 0; i < 1000; i += 7) {
+            deque.get(i, rec, 0);
+            assertEquals(value(rec), i);
+        }
+        deque.rotate(300);
+        deque.get(0, rec, 0);
+        assertEquals(value(rec), 700);
+        deque.rotate(-301);
+        buf.clear();
+        deque.removeLast(buf);
+        assertEquals(value(buf.array()), 0);
+        deque.set(0, record(42), 0);
+        buf.clear();
+        deque.removeFirst(buf);
+        assertEquals(value(buf.array()), 42);
+        assertEquals(deque.size(), 998);
+        deque.clear();
+        assertEquals(deque.size(), 0);
+        deque.addLast(record(5), 0);
+        deque.removeLast(rec, 0);
+        assertEquals(value(rec), 5);
+    }
+
+    @Test
+    public void testDirect() throws IOException {
+        try (RecordBlockDeque deque = new RecordBlockDeque(8, 16)) {
+            checkDeque(deque);
+        }
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        Path file = folder.newFile().toPath();
+        try (RecordBlockDeque deque = new RecordBlockDeque(8, 4, file)) {
+            checkDeque(deque);
+            for (int i = 0; i < 1000; i++) {
+                deque.addLast(record(i), 0);
+            }
+            for (int i = 0; i < 1000; i++) {
+                deque.discardFirst();
+            }
+            for (int i = 0; i < 1000; i++) {
+                deque.addFirst(record(i), 0);
+            }
+            /* Freed slots were reused instead of growing the file */
+            assertEquals(deque.numslots <= 1000 / 4 + 2, true);
+        }
+    }
+
+    @Test
+    public void testRotateLinks() throws IOException {
+        byte[] rec = new byte[8];
+        try (RecordBlockDeque deque = new RecordBlockDeque(8, 4)) {
+            for (int i = 0; i < 10; i++) {
+                deque.addLast(record(i), 0);
+            }
+            for (int n : new int[] {3, 5, -4, -5, 2}) {
+                deque.rotate(n);
+                /* Blocks dropped by the rotation aren't linked to any more */
+                assertEquals(deque.leftblock.leftlink, null);
+                assertEquals(deque.rightblock.rightlink, null);
+            }
+            deque.get(0, rec, 0);
+            assertEquals(value(rec), 9);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortBuffer() throws IOException {
+        try (RecordBlockDeque deque = new RecordBlockDeque(8)) {
+            deque.addLast(ByteBuffer.allocate(4));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SlidingWindowTest {
+    @Test
+    public void testSum() {
+        SlidingWindow<Integer> window = new SlidingWindow<>(Integer::sum, 3);
+        window.addLast(1);
+        window.addLast(2);
+        assertEquals(window.get(), Integer.valueOf(3));
+        window.addLast(3);
+        window.addLast(4);
+        assertEquals(window.toString(), "[2, 3, 4]");
+        assertEquals(window.get(), Integer.valueOf(9));
+        assertEquals(window.removeFirst(), Integer.valueOf(2));
+        assertEquals(window.get(), Integer.valueOf(7));
+    }
+
+    @Test
+    public void testOrder() {
+        /* Concatenation isn't commutative */
+        SlidingWindow<String> window = new SlidingWindow<>(String::concat, 4);
+        List<String> expected = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            String item = Integer.toString(i);
+            window.addLast(item);
+            expected.add(item);
+            if (expected.size() > 4) {
+                expected.remove(0);
+            }
+            if (random.nextInt(5) == 0) {
+                window.removeFirst();
+                expected.remove(0);
+            }
+            if (!expected.isEmpty()) {
+                assertEquals(window.get(), String.join("", expected));
+            }
+        }
+    }
+
+    @Test
+    public void testMinMax() {
+        SlidingWindow<Integer> window = new SlidingWindow<>(Math::max, 50);
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            int item = random.nextInt(1000);
+            window.addLast(item);
+            expected.add(item);
+            if (expected.size() > 50) {
+                expected.remove(0);
+            }
+            assertEquals(window.get(), expected.stream().max(Integer::compare).get());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class SpscBlockDequeTest {
+    @Test
+    public void testManyBlocks() {
+        SpscBlockDeque<Integer> deque = new SpscBlockDeque<>();
+        for (int i = 0; i < 1000; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(deque.size(), 1000);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(deque.peek(), Integer.valueOf(i));
+            assertEquals(deque.removeFirst(), Integer.valueOf(i));
+        }
+        assertEquals(deque.poll(), null);
+        assertEquals(deque.peek(), null);
+        assertEquals(deque.isEmpty(), true);
+    }
+
+    @Test
+    public void testCapacity() {
+        SpscBlockDeque<Integer> deque = new SpscBlockDeque<>(100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(deque.offer(i), true);
+        }
+        assertEquals(deque.offer(100), false);
+        deque.poll();
+        assertEquals(deque.offer(100), true);
+        assertEquals(deque.size(), 100);
+    }
+
+    @Test
+    public void testDrainAndIter() {
+        SpscBlockDeque<Integer> deque = new SpscBlockDeque<>();
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            deque.addLast(i);
+        }
+        assertEquals(deque.drain(list::add, 70), 70);
+        assertEquals(list.get(69), Integer.valueOf(69));
+        list.clear();
+        for (Integer item : deque) {
+            list.add(item);
+        }
+        assertEquals(list.size(), 130);
+        assertEquals(list.get(0), Integer.valueOf(70));
+        list.clear();
+        assertEquals(deque.drain(list::add), 130);
+        assertEquals(list.get(129), Integer.valueOf(199));
+        assertEquals(deque.drain(list::add), 0);
+    }
+
+    @Test(timeout = 60000)
+    public void testProducerConsumer() throws Throwable {
+        SpscBlockDeque<Integer> deque = new SpscBlockDeque<>(1000);
+        int count = 1000000;
+        AtomicLong sum = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            /* Stops early if the consumer gave up, so the queue stays full */
+            for (int i = 0; i < count && failure.get() == null;) {
+                if (deque.offer(i)) {
+                    i++;
+                }
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            try {
+                long total = 0;
+                for (int expected = 0; expected < count;) {
+                    Integer item = deque.poll();
+                    if (item != null) {
+                        /* Also checks that nothing is reordered */
+                        assertEquals(item.intValue(), expected++);
+                        total += item;
+                    }
+                }
+                sum.set(total);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        assertEquals(deque.size(), 0);
+        assertEquals(sum.get(), (long)count * (count - 1) / 2);
+    }
+}
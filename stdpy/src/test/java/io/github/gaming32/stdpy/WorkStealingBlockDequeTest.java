@@ -0,0 +1,107 @@
+package io.github.gaming32.stdpy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class WorkStealingBlockDequeTest {
+    @Test
+    public void testPushPopSteal() {
+        WorkStealingBlockDeque<Integer> deque = new WorkStealingBlockDeque<>();
+        for (int i = 0; i < 1000; i++) {
+            deque.push(i);
+        }
+        assertEquals(deque.size(), 1000);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(deque.steal(), Integer.valueOf(i));
+        }
+        for (int i = 999; i >= 300; i--) {
+            assertEquals(deque.pop(), Integer.valueOf(i));
+        }
+        assertEquals(deque.pop(), null);
+        assertEquals(deque.steal(), null);
+        assertEquals(deque.isEmpty(), true);
+    }
+
+    @Test
+    public void testRing() {
+        /* Stays at one window's worth of items, so the blocks get reused */
+        WorkStealingBlockDeque<Integer> deque = new WorkStealingBlockDeque<>(1);
+        for (int i = 0; i < 100; i++) {
+            deque.push(i);
+        }
+        for (int i = 100; i < 10000; i++) {
+            deque.push(i);
+            assertEquals(deque.steal(), Integer.valueOf(i - 100));
+        }
+        assertEquals(deque.blocks.length, 4);
+        for (int i = 9999; i >= 9900; i--) {
+            assertEquals(deque.pop(), Integer.valueOf(i));
+        }
+        assertEquals(deque.pop(), null);
+    }
+
+    @Test
+    public void testPopLastClears() {
+        WorkStealingBlockDeque<Integer> deque = new WorkStealingBlockDeque<>(1);
+        for (int i = 0; i < 10; i++) {
+            deque.push(i);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(deque.steal(), Integer.valueOf(i));
+        }
+        for (int i = 9; i >= 5; i--) {
+            assertEquals(deque.pop(), Integer.valueOf(i));
+        }
+        /* Taking the last item releases the stolen ones too */
+        for (int i = 0; i < 10; i++) {
+            assertEquals(deque.blocks[0][i], null);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testStealers() throws InterruptedException {
+        WorkStealingBlockDeque<Integer> deque = new WorkStealingBlockDeque<>(1);
+        int count = 500000;
+        AtomicIntegerArray taken = new AtomicIntegerArray(count);
+        AtomicLong remaining = new AtomicLong(count);
+        Thread[] thieves = new Thread[3];
+        for (int t = 0; t < thieves.length; t++) {
+            thieves[t] = new Thread(() -> {
+                while (remaining.get() > 0) {
+                    Integer item = deque.steal();
+                    if (item != null) {
+                        taken.incrementAndGet(item);
+                        remaining.decrementAndGet();
+                    }
+                }
+            });
+            thieves[t].setDaemon(true);
+            thieves[t].start();
+        }
+        for (int i = 0; i < count; i++) {
+            deque.push(i);
+            /* Pop every third item ourselves, sometimes racing for the last */
+            if (i % 3 == 0) {
+                Integer item = deque.pop();
+                if (item != null) {
+                    taken.incrementAndGet(item);
+                    remaining.decrementAndGet();
+                }
+            }
+        }
+        for (Integer item; (item = deque.pop()) != null;) {
+            taken.incrementAndGet(item);
+            remaining.decrementAndGet();
+        }
+        for (Thread thief : thieves) {
+            thief.join();
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(taken.get(i), 1);
+        }
+    }
+}